@@ -0,0 +1,128 @@
+import java.util.Arrays;
+
+/**
+ * Deduplication that picks the engine from the input.
+ *
+ * A prefix of the input is sampled to see whether it is sorted, whether it is all
+ * integers, and how many of its words are duplicates. Then the input goes to
+ * <ul>
+ * <li> <tt>BasicDedup</tt>, if it is tiny and has no <tt>null</tt>,</li>
+ * <li> a linear adjacent compare, if it is sorted,</li>
+ * <li> <tt>NumericDedup</tt>, if the prefix is all integers,</li>
+ * <li> <tt>ParallelDedup</tt>, if it is large and there is more than one core,</li>
+ * <li> <tt>OpenAddressingDedup</tt> otherwise, sized from the duplicate ratio of the prefix.</li>
+ * </ul>
+ * Every path keeps the first occurrence of each word, in order. The thresholds come
+ * from <tt>java Benchmark -mode calibrate</tt>, and <tt>lastPath()</tt> tells which path
+ * the last call took.
+ */
+class AdaptiveDedup implements Dedup {
+
+    /** The engines the input can be dispatched to. */
+    enum Path {BASIC, SORTED, NUMERIC, PARALLEL, HASH}
+
+    /** Largest input for <tt>BasicDedup</tt>, from <tt>Benchmark -mode calibrate</tt>. */
+    static final int BASIC_THRESHOLD = 8;
+    /** Smallest input for <tt>ParallelDedup</tt>. Recalibrate on the target machine. */
+    static final int PARALLEL_THRESHOLD = 1 << 17;
+    /** Number of words sampled from the start of the input. */
+    static final int SAMPLE_SIZE = 1024;
+
+    private final int basicThreshold;
+    private final int parallelThreshold;
+    private final int parallelism;
+    private final Dedup basic = Dedup.newBasicDedup();
+    private final NumericDedup numeric = new NumericDedup();
+    private final OpenAddressingDedup hash = new OpenAddressingDedup();
+    private final StringTable sampleTable = new StringTable(SAMPLE_SIZE);
+    private Dedup parallel;
+    private volatile Path lastPath;
+
+    AdaptiveDedup() {
+        this(BASIC_THRESHOLD, PARALLEL_THRESHOLD, Runtime.getRuntime().availableProcessors());
+    }
+
+    AdaptiveDedup(int basicThreshold, int parallelThreshold, int parallelism) {
+        this.basicThreshold = basicThreshold;
+        this.parallelThreshold = parallelThreshold;
+        this.parallelism = parallelism;
+    }
+
+    public String[] dedup(String[] strings) {
+        return Arrays.copyOf(strings, dedupInto(strings, 0, strings.length, strings));
+    }
+
+    public int dedupInto(String[] in, int from, int to, String[] out) {
+        int n = to - from;
+        if (n <= basicThreshold && !containsNull(in, from, to)) return run(Path.BASIC, basic, in, from, to, out);
+
+        int sample = Math.min(n, SAMPLE_SIZE);
+        if (isSorted(in, from, from + sample) && isSorted(in, from + sample - 1, to)) {
+            lastPath = Path.SORTED;
+            return sortedDedup(in, from, to, out);
+        }
+
+        if (isNumeric(in, from, from + sample)) return run(Path.NUMERIC, numeric, in, from, to, out);
+
+        if (parallelism > 1 && n >= parallelThreshold) {
+            if (parallel == null) parallel = new ParallelDedup(parallelism, true);
+            return run(Path.PARALLEL, parallel, in, from, to, out);
+        }
+
+        sampleTable.clear();
+        for (int i = from; i < from + sample; i++) sampleTable.add(in[i]);
+        int unique = sampleTable.size();
+        int expected = (int) Math.min(n, (long) n * unique / sample + 16);
+        lastPath = Path.HASH;
+        return hash.dedupInto(in, from, to, out, expected);
+    }
+
+    public boolean isInPlace() {return true;}
+
+    /**
+     * Returns the path taken by the last call to <tt>dedup</tt>, or <tt>null</tt> before the first.
+     */
+    Path lastPath() {return lastPath;}
+
+    private int run(Path path, Dedup dedup, String[] in, int from, int to, String[] out) {
+        lastPath = path;
+        return dedup.dedupInto(in, from, to, out);
+    }
+
+    /**
+     * Returns <tt>true</tt> if <tt>strings[from..to)</tt> is in non-decreasing order.
+     */
+    private static boolean isSorted(String[] strings, int from, int to) {
+        for (int i = from + 1; i < to; i++)
+            if (strings[i - 1] == null || strings[i] == null || strings[i - 1].compareTo(strings[i]) > 0)
+                return false;
+        return true;
+    }
+
+    private static boolean containsNull(String[] strings, int from, int to) {
+        for (int i = from; i < to; i++)
+            if (strings[i] == null)
+                return true;
+        return false;
+    }
+
+    private static boolean isNumeric(String[] strings, int from, int to) {
+        for (int i = from; i < to; i++)
+            if (!NumericDedup.isNumeric(strings[i]))
+                return false;
+        return true;
+    }
+
+    /**
+     * Deduplication of sorted input: duplicates are adjacent, so one compare per word.
+     */
+    private static int sortedDedup(String[] in, int from, int to, String[] out) {
+        if (from == to) return 0;
+        out[0] = in[from];
+        int count = 1;
+        for (int i = from + 1; i < to; i++)
+            if (!in[i].equals(out[count - 1]))
+                out[count++] = in[i];
+        return count;
+    }
+}
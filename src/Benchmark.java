@@ -0,0 +1,745 @@
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Benchmark harness for the <tt>Dedup</tt>-implementations, replacing the single-shot
+ * timing of <tt>Innlevering1.run</tt> and <tt>DedupTest.test</tt>.
+ *
+ * Works like a JMH throughput benchmark: every combination of engine, input file, input
+ * size and duplicate ratio gets warm-up iterations followed by measurement iterations,
+ * each running the engine repeatedly for a fixed time. Every invocation gets a fresh
+ * copy of the input, made outside the timed region, since several engines deduplicate
+ * in place. For each combination it reports
+ * <ul>
+ * <li> throughput, in operations per second and nanoseconds per operation,</li>
+ * <li> bytes allocated per operation, from <tt>ThreadMXBean.getThreadAllocatedBytes</tt>,</li>
+ * <li> garbage collections and collection time per iteration, like <tt>-prof gc</tt>.</li>
+ * </ul>
+ *
+ * By default the input has exactly the given duplicate ratio, drawn uniformly. With
+ * <tt>-skew</tt> or <tt>-order</tt>, the input is made by <tt>Workload</tt> instead, drawing
+ * from <tt>size * (1 - dups)</tt> words of the file.
+ *
+ * With <tt>-mode calibrate</tt>, it instead measures the crossover points that
+ * <tt>AdaptiveDedup</tt> uses as thresholds. With <tt>-mode concurrent</tt>, it measures
+ * the shared sets in <tt>SETS</tt> with 1, 2, 4, ... threads adding the same input to one
+ * set, to show how they scale under contention. With <tt>-mode service</tt>, the same thread
+ * counts act as in-process clients of <tt>DedupService</tt>, each submitting batches of the
+ * given sizes, with and without coalescing, against calling a pooled engine directly.
+ * With <tt>-mode window</tt>, it measures the events per second of the windowed streaming
+ * engines, with a window of <tt>-window</tt> words or one second, against an unbounded set.
+ * With <tt>-mode footprint</tt>, it reports the estimated retained size of the output of
+ * many batches, as returned, canonicalised, and packed (see <tt>Footprint</tt>).
+ * With <tt>-mode index</tt>, it builds a <tt>DedupIndex</tt> on disk from the input, and
+ * times the first pass, the commit, reopening, and a second pass against the reopened index.
+ * With <tt>-mode frontcoding</tt>, it compares the retained size of the sorted unique words
+ * as a <tt>String[]</tt> with <tt>PackedWords</tt> and <tt>FrontCodedWords</tt>, and times
+ * lookups in the front coded words. With <tt>-mode overhead</tt>, it measures each engine
+ * bare and wrapped in an <tt>InstrumentedDedup</tt>, disabled and enabled; run it again
+ * with <tt>-Ddedup.countProbes=true</tt> to include the cost of counting probes.
+ *
+ * Usage: <tt>java Benchmark [-mode throughput|calibrate|concurrent|service|window|footprint|index|frontcoding|overhead] [-engines hashset,sort,...]
+ * [-files tall100000.txt,...] [-sizes 1000,100000] [-dups 0,0.5,0.9] [-skew uniform|zipf|hotset]
+ * [-order random|sorted|reverse|clustered] [-threads 1,2,4] [-window 65536] [-warmup 3] [-iterations 5]
+ * [-time 500] [-csv results.csv]</tt>
+ */
+public class Benchmark {
+
+    /**
+     * Every <tt>Dedup</tt> factory, by name. The argument is the input size, for the
+     * engines that are sized up front.
+     */
+    static final Map<String, IntFunction<Dedup>> ENGINES = new LinkedHashMap<>();
+    static {
+        int cpus = Runtime.getRuntime().availableProcessors();
+        ENGINES.put("basic", n -> Dedup.newBasicDedup());
+        ENGINES.put("sort", n -> Dedup.newSortDedup());
+        ENGINES.put("arraylist", n -> Dedup.newArrayListDedup());
+        ENGINES.put("hashset", n -> Dedup.newHashSetDedup());
+        ENGINES.put("treeset", n -> Dedup.newTreeSetDedup());
+        ENGINES.put("openaddressing", n -> Dedup.newOpenAddressingDedup());
+        ENGINES.put("swiss", n -> Dedup.newSwissDedup());
+        ENGINES.put("parallel", n -> Dedup.newParallelDedup(cpus));
+        ENGINES.put("parallel-ordered", n -> Dedup.newParallelDedup(cpus, true));
+        ENGINES.put("externalsort", n -> Dedup.newExternalSortDedup());
+        ENGINES.put("numeric", n -> Dedup.newNumericDedup());
+        ENGINES.put("bloom", n -> Dedup.newBloomDedup(Math.max(n, 1), 0.01));
+        ENGINES.put("radixsort", n -> Dedup.newRadixSortDedup());
+        ENGINES.put("numericsort", n -> Dedup.newNumericSortDedup());
+        ENGINES.put("adaptive", n -> Dedup.newAdaptiveDedup());
+        ENGINES.put("pooled", n -> Dedup.newPooledDedup());
+        ENGINES.put("counting", n -> Dedup.newCountingDedup());
+        ENGINES.put("canonical", n -> Dedup.newCanonicalDedup());
+        ENGINES.put("ordered", n -> Dedup.newOrderedDedup());
+        ENGINES.put("keeplast", n -> Dedup.newKeepLastDedup());
+    }
+
+    /** Engines that only run when named with <tt>-engines</tt>. */
+    static final List<String> EXPERIMENTAL = Arrays.asList("swiss");
+
+    /**
+     * The shared sets for <tt>-mode concurrent</tt>, by name, as factories of their
+     * <tt>add</tt> method.
+     */
+    static final Map<String, Supplier<Predicate<String>>> SETS = new LinkedHashMap<>();
+    static {
+        SETS.put("striped", () -> new ConcurrentDedupSet()::firstSeen);
+        SETS.put("concurrenthashmap", () -> ConcurrentHashMap.<String>newKeySet()::add);
+    }
+
+    /** Inputs above this size are skipped for the quadratic engines. */
+    private static final int QUADRATIC_LIMIT = 20000;
+
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    /** Sink for results, so that the JIT cannot remove the work. */
+    static volatile int blackhole;
+
+    private String mode = "throughput";
+    private List<String> engines = defaultEngines();
+    private List<String> files = Arrays.asList("tall100000.txt");
+    private int[] sizes = {1000, 100000};
+    private double[] dupRatios = {0, 0.5, 0.9};
+    private Workload.Skew skew;
+    private Workload.Order order;
+    private int[] threads;
+    private int window = 1 << 16;
+    private int warmupIterations = 3;
+    private int measurementIterations = 5;
+    private long iterationMillis = 500;
+    private PrintStream csv;
+    private String rowFormat, csvFormat; // of the table started by header
+
+    public static void main(String[] args) {
+        Benchmark benchmark = new Benchmark(args);
+        try {
+            switch (benchmark.mode) {
+                case "throughput": benchmark.run(); break;
+                case "calibrate": benchmark.calibrate(); break;
+                case "concurrent": benchmark.concurrent(); break;
+                case "service": benchmark.service(); break;
+                case "window": benchmark.window(); break;
+                case "footprint": benchmark.footprint(); break;
+                case "index": benchmark.index(); break;
+                case "frontcoding": benchmark.frontCoding(); break;
+                case "overhead": benchmark.overhead(); break;
+                default: throw new IllegalArgumentException("Unknown mode " + benchmark.mode);
+            }
+        } finally {
+            if (benchmark.csv != null) benchmark.csv.close();
+        }
+    }
+
+    Benchmark(String[] args) {
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            String value = args[i + 1];
+            switch (args[i]) {
+                case "-mode": mode = value; break;
+                case "-engines": engines = Arrays.asList(value.split(",")); break;
+                case "-files": files = Arrays.asList(value.split(",")); break;
+                case "-sizes": sizes = Arrays.stream(value.split(",")).mapToInt(Integer::parseInt).toArray(); break;
+                case "-dups": dupRatios = Arrays.stream(value.split(",")).mapToDouble(Double::parseDouble).toArray(); break;
+                case "-skew": skew = Workload.Skew.valueOf(value.toUpperCase()); break;
+                case "-order": order = Workload.Order.valueOf(value.toUpperCase()); break;
+                case "-window": window = Integer.parseInt(value); break;
+                case "-threads": threads = Arrays.stream(value.split(",")).mapToInt(Integer::parseInt).toArray(); break;
+                case "-warmup": warmupIterations = Integer.parseInt(value); break;
+                case "-iterations": measurementIterations = Integer.parseInt(value); break;
+                case "-time": iterationMillis = Long.parseLong(value); break;
+                case "-csv": csv = createFile(value); break;
+                default: throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+        for (String engine : engines)
+            if (!ENGINES.containsKey(engine))
+                throw new IllegalArgumentException("Unknown engine " + engine + ", expected one of " + ENGINES.keySet());
+    }
+
+    void run() {
+        header("%-18s %-16s %10d %5.2f %14.1f %12.1f %14.1f %6d %8d",
+                "engine", "file", "size", "dups", "ops/s", "ns/op", "bytes/op", "gc", "gc-ms");
+        forEachInput((file, vocabulary, size, dups) -> {
+            String[] input = input(vocabulary, size, dups);
+            for (String engine : engines) {
+                if (isQuadratic(engine, size)) continue;
+                Result r = measure(ENGINES.get(engine).apply(size), input);
+                row(engine, file, size, dups, r.opsPerSecond(), r.nanosPerOp(), r.bytesPerOp(), r.gcCount, r.gcMillis);
+            }
+        });
+    }
+
+    /**
+     * Measures the crossover points used by <tt>AdaptiveDedup</tt>: the largest input where
+     * <tt>BasicDedup</tt> beats <tt>OpenAddressingDedup</tt>, and the smallest input where
+     * <tt>ParallelDedup</tt> beats it. Also measures the largest input where
+     * <tt>ArrayListDedup</tt> beats <tt>OrderedDedup</tt>, which gives the same output.
+     * Uses the first file and a duplicate ratio of 0.5.
+     */
+    void calibrate() {
+        String[] vocabulary = vocabulary(files.get(0));
+        System.out.printf("%10s %14s %14s%n", "size", "basic ns/op", "hash ns/op");
+        int basicThreshold = 0;
+        for (int size : new int[]{2, 4, 8, 12, 16, 24, 32, 48, 64, 96, 128, 192, 256}) {
+            String[] input = input(vocabulary, size, 0.5, 42);
+            double basic = measure(Dedup.newBasicDedup(), input).nanosPerOp();
+            double hash = measure(Dedup.newOpenAddressingDedup(), input).nanosPerOp();
+            System.out.printf("%10d %14.1f %14.1f%n", size, basic, hash);
+            if (basic <= hash) basicThreshold = size;
+        }
+
+        int cpus = Runtime.getRuntime().availableProcessors();
+        System.out.printf("%10s %14s %14s%n", "size", "hash ns/op", "parallel ns/op");
+        int parallelThreshold = -1;
+        for (int size = 1 << 14; cpus > 1 && size <= 1 << 21; size <<= 1) {
+            String[] input = input(vocabulary, size, 0.5, 42);
+            double hash = measure(Dedup.newOpenAddressingDedup(), input).nanosPerOp();
+            double parallel = measure(Dedup.newParallelDedup(cpus, true), input).nanosPerOp();
+            System.out.printf("%10d %14.1f %14.1f%n", size, hash, parallel);
+            if (parallel < hash && parallelThreshold < 0) parallelThreshold = size;
+        }
+        System.out.printf("%10s %14s %14s%n", "size", "arraylist ns/op", "ordered ns/op");
+        int orderedThreshold = 0;
+        for (int size : new int[]{2, 4, 8, 12, 16, 24, 32, 48, 64, 96, 128, 192, 256, 512, 1024}) {
+            String[] input = input(vocabulary, size, 0.5, 42);
+            double list = measure(Dedup.newArrayListDedup(), input).nanosPerOp();
+            double ordered = measure(Dedup.newOrderedDedup(), input).nanosPerOp();
+            System.out.printf("%10d %14.1f %14.1f%n", size, list, ordered);
+            if (list <= ordered) orderedThreshold = size;
+        }
+        System.out.printf("BASIC_THRESHOLD = %d%n", basicThreshold);
+        System.out.printf("ArrayListDedup is faster than OrderedDedup up to %d words%n", orderedThreshold);
+        System.out.printf("PARALLEL_THRESHOLD = %s%n", parallelThreshold < 0 ? "none (" + cpus + " cpu)" : parallelThreshold);
+    }
+
+    /**
+     * Measures the shared sets with 1, 2, 4, ... up to twice the available processors
+     * threads, or the counts given with <tt>-threads</tt>. Every thread adds all of the
+     * input to the same set, each starting at its own offset, so the threads race for
+     * the same words. Throughput is counted in adds over all threads.
+     */
+    void concurrent() {
+        int[] threadCounts = threadCounts();
+        header("%-18s %-16s %10d %5.2f %8d %14.1f %12.1f %8.2f",
+                "set", "file", "size", "dups", "threads", "adds/s", "ns/add", "scaling");
+        forEachInput((file, vocabulary, size, dups) -> {
+            String[] input = input(vocabulary, size, dups);
+            int unique = Dedup.openAddressingDedup(input.clone()).length;
+            for (Map.Entry<String, Supplier<Predicate<String>>> set : SETS.entrySet()) {
+                double single = 0;
+                for (int t : threadCounts) {
+                    Result r = measureConcurrent(set.getValue(), input, t, unique);
+                    if (single == 0) single = r.opsPerSecond() / t;
+                    row(set.getKey(), file, size, dups, t, r.opsPerSecond(), r.nanosPerOp(), r.opsPerSecond() / single);
+                }
+            }
+        });
+    }
+
+    /**
+     * Measures <tt>DedupService</tt> with 1, 2, 4, ... clients, or the counts given with
+     * <tt>-threads</tt>. Every client submits the same batch over and over, with up to
+     * <tt>SERVICE_WINDOW</tt> requests outstanding, and the batch size is the input size.
+     * The variants are the service with default coalescing, the service with coalescing
+     * turned off, and a <tt>DedupPool</tt> called directly by the clients.
+     */
+    void service() {
+        int[] threadCounts = threadCounts();
+        header("%-18s %-16s %10d %5.2f %8d %14.1f %14.1f",
+                "variant", "file", "batch", "dups", "clients", "batches/s", "words/s");
+        forEachInput((file, vocabulary, size, dups) -> {
+            String[] batch = input(vocabulary, size, dups, 42);
+            for (int clients : threadCounts) {
+                DedupPool pool = new DedupPool();
+                Result r = measureService(words -> {
+                    String[] out = new String[words.length];
+                    return CompletableFuture.completedFuture(Arrays.copyOf(out, pool.dedupInto(words, 0, words.length, out)));
+                }, batch, clients);
+                row("direct", file, size, dups, clients, r.opsPerSecond(), r.opsPerSecond() * size);
+                try (DedupService service = new DedupService()) {
+                    r = measureService(service::submit, batch, clients);
+                }
+                row("service", file, size, dups, clients, r.opsPerSecond(), r.opsPerSecond() * size);
+                try (DedupService service = new DedupService(Dedup.newPooledDedup(), null,
+                        DedupService.DEFAULT_QUEUE_CAPACITY, 0, 0)) {
+                    r = measureService(service::submit, batch, clients);
+                }
+                row("service-single", file, size, dups, clients, r.opsPerSecond(), r.opsPerSecond() * size);
+            }
+        });
+    }
+
+    /**
+     * Measures the windowed streaming engines: every operation streams the whole input
+     * through one long-lived engine, so the stream is endless and the window full.
+     */
+    void window() {
+        Map<String, Supplier<StreamingDedup>> streams = new LinkedHashMap<>();
+        streams.put("windowed", () -> StreamingDedup.newWindowedDedup(window, word -> {}));
+        streams.put("timewindowed", () -> StreamingDedup.newTimeWindowedDedup(1, java.util.concurrent.TimeUnit.SECONDS, 8 * window, word -> {}));
+        streams.put("hash-unbounded", StreamingDedup::newHashStreamingDedup);
+        header("%-18s %-16s %10d %5.2f %14.1f %12.1f %14.1f %6d",
+                "stream", "file", "size", "dups", "events/s", "ns/event", "bytes/event", "gc");
+        forEachInput((file, vocabulary, size, dups) -> {
+            String[] input = input(vocabulary, size, dups);
+            for (Map.Entry<String, Supplier<StreamingDedup>> stream : streams.entrySet()) {
+                StreamingDedup dedup = stream.getValue().get();
+                Result r = measure(words -> {
+                    int passed = 0;
+                    for (String word : words) if (dedup.accept(word)) passed++;
+                    blackhole += passed;
+                    return words;
+                }, input);
+                double events = r.opsPerSecond() * size;
+                row(stream.getKey(), file, size, dups, events, 1e9 / events, r.bytesPerOp() / size, r.gcCount);
+            }
+        });
+    }
+
+    /** Number of batches whose output is kept in <tt>-mode footprint</tt>. */
+    private static final int FOOTPRINT_BATCHES = 20;
+
+    /**
+     * Deduplicates <tt>FOOTPRINT_BATCHES</tt> batches, each made of fresh string instances
+     * as if parsed from a new input, and keeps all the output. Reports its retained size
+     * as returned by <tt>OpenAddressingDedup</tt>, with canonical instances from
+     * <tt>CanonicalDedup</tt>, and packed into <tt>PackedWords</tt>.
+     */
+    void footprint() {
+        header("%-16s %10d %5.2f %14d %14d %8.2f %14d %8.2f",
+                "file", "size", "dups", "plain bytes", "canonical", "ratio", "packed", "ratio");
+        forEachInput((file, vocabulary, size, dups) -> {
+            Dedup plain = Dedup.newOpenAddressingDedup();
+            Dedup canonical = Dedup.newCanonicalDedup();
+            String[][] plainOutput = new String[FOOTPRINT_BATCHES][];
+            String[][] canonicalOutput = new String[FOOTPRINT_BATCHES][];
+            long packed = 0;
+            for (int b = 0; b < FOOTPRINT_BATCHES; b++) {
+                String[] batch = input(vocabulary, size, dups, 42 + b);
+                for (int i = 0; i < batch.length; i++) batch[i] = new String(batch[i].toCharArray());
+                plainOutput[b] = plain.dedup(batch.clone());
+                canonicalOutput[b] = canonical.dedup(batch);
+                packed += new PackedWords(plainOutput[b]).footprint();
+            }
+            long plainBytes = Footprint.ofStrings(plainOutput);
+            long canonicalBytes = Footprint.ofStrings(canonicalOutput);
+            row(file, size, dups, plainBytes, canonicalBytes, (double) canonicalBytes / plainBytes, packed, (double) packed / plainBytes);
+        });
+    }
+
+    /**
+     * For each input, builds a <tt>DedupIndex</tt> in a temporary directory, commits it,
+     * and reopens it. Reports the time per word of the first pass, the commit and the
+     * repeated second pass, in which every word has been seen, and the time to reopen.
+     */
+    void index() {
+        header("%-16s %10d %5.2f %10d %12.1f %12.1f %12.2f %12.1f",
+                "file", "size", "dups", "unique", "first ns/w", "commit ns/w", "reopen ms", "seen ns/w");
+        forEachInput((file, vocabulary, size, dups) -> {
+            String[] input = input(vocabulary, size, dups);
+            java.nio.file.Path dir = null;
+            try {
+                dir = java.nio.file.Files.createTempDirectory("dedup-index");
+                long start = System.nanoTime();
+                int unique;
+                long first, commit;
+                try (DedupIndex index = Dedup.openIndex(dir)) {
+                    unique = index.dedupAgainstIndex(input).length;
+                    first = System.nanoTime();
+                    index.commit();
+                    commit = System.nanoTime();
+                }
+                long opened = System.nanoTime();
+                try (DedupIndex index = Dedup.openIndex(dir)) {
+                    long reopen = System.nanoTime() - opened;
+                    Result r = measure(words -> {
+                        blackhole += index.dedupAgainstIndex(words).length;
+                        return words;
+                    }, input);
+                    row(file, size, dups, unique, (double) (first - start) / size, (double) (commit - first) / size,
+                            reopen / 1e6, r.nanosPerOp() / size);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } finally {
+                if (dir != null)
+                    try {
+                        for (String name : new String[]{DedupIndex.LOG_FILE, DedupIndex.INDEX_FILE})
+                            java.nio.file.Files.deleteIfExists(dir.resolve(name));
+                        java.nio.file.Files.deleteIfExists(dir);
+                    } catch (IOException e) {
+                        System.err.println("Could not delete " + dir + ": " + e);
+                    }
+            }
+        });
+    }
+
+    /**
+     * Sorts and deduplicates each input, made of fresh string instances, and reports the
+     * retained size of the result as a <tt>String[]</tt>, packed, and front coded, with
+     * the time per word of <tt>get</tt>, <tt>contains</tt> and iteration on the front
+     * coded words.
+     */
+    void frontCoding() {
+        header("%-16s %10d %5.2f %10d %14d %14d %8.2f %14d %8.2f %8.1f %10.1f %8.1f", "file", "size", "dups", "unique",
+                "String[] bytes", "packed", "ratio", "front coded", "ratio", "get ns", "contains ns", "iter ns");
+        forEachInput((file, vocabulary, size, dups) -> {
+            String[] input = input(vocabulary, size, dups);
+            for (int i = 0; i < input.length; i++) input[i] = new String(input[i].toCharArray());
+            String[] sorted = Dedup.sortDedup(input.clone());
+            FrontCodedWords coded = new FrontCodedWords(sorted);
+            long plain = Footprint.ofStrings(sorted), packed = new PackedWords(sorted).footprint(), front = coded.footprint();
+            Random random = new Random(42);
+            int[] indices = random.ints(size, 0, sorted.length).toArray();
+            double get = measure(words -> {
+                for (int i : indices) blackhole += coded.get(i).length();
+                return words;
+            }, input).nanosPerOp() / size;
+            double contains = measure(words -> {
+                for (String word : words) if (coded.contains(word)) blackhole++;
+                return words;
+            }, input).nanosPerOp() / size;
+            double iterate = measure(words -> {
+                for (String word : coded) blackhole += word.length();
+                return words;
+            }, input).nanosPerOp() / sorted.length;
+            row(file, size, dups, sorted.length, plain, packed, (double) packed / plain, front, (double) front / plain,
+                    get, contains, iterate);
+        });
+    }
+
+    /**
+     * Measures each engine bare, and wrapped in an <tt>InstrumentedDedup</tt> that is
+     * disabled and enabled, and reports the time per operation and the overhead.
+     */
+    void overhead() {
+        header("%-18s %-16s %10d %5.2f %12.1f %12.1f %8.1f %12.1f %8.1f",
+                "engine", "file", "size", "dups", "bare ns/op", "disabled", "+%", "enabled", "+%");
+        forEachInput((file, vocabulary, size, dups) -> {
+            String[] input = input(vocabulary, size, dups);
+            for (String engine : engines) {
+                if (isQuadratic(engine, size)) continue;
+                double bare = measure(ENGINES.get(engine).apply(size), input).nanosPerOp();
+                InstrumentedDedup instrumented = Dedup.newInstrumentedDedup(ENGINES.get(engine).apply(size));
+                instrumented.setEnabled(false);
+                double disabled = measure(instrumented, input).nanosPerOp();
+                instrumented.setEnabled(true);
+                double enabled = measure(instrumented, input).nanosPerOp();
+                row(engine, file, size, dups, bare, disabled, 100 * (disabled / bare - 1), enabled, 100 * (enabled / bare - 1));
+            }
+        });
+    }
+
+    /**
+     * A measurement of one input, in the modes that run over every file, size and
+     * duplicate ratio.
+     */
+    private interface Case {
+        void run(String file, String[] vocabulary, int size, double dups);
+    }
+
+    /**
+     * Runs <tt>c</tt> for every combination of file, input size and duplicate ratio.
+     */
+    private void forEachInput(Case c) {
+        for (String file : files) {
+            String[] vocabulary = vocabulary(file);
+            for (int size : sizes)
+                for (double dups : dupRatios)
+                    c.run(file, vocabulary, size, dups);
+        }
+    }
+
+    /**
+     * Returns the engines of <tt>ENGINES</tt> that are not <tt>EXPERIMENTAL</tt>.
+     */
+    private static List<String> defaultEngines() {
+        List<String> engines = new ArrayList<>(ENGINES.keySet());
+        engines.removeAll(EXPERIMENTAL);
+        return engines;
+    }
+
+    /**
+     * Returns <tt>true</tt> if <tt>engine</tt> is quadratic and the input too large for it.
+     */
+    private static boolean isQuadratic(String engine, int size) {
+        return size > QUADRATIC_LIMIT && (engine.equals("basic") || engine.equals("arraylist"));
+    }
+
+    /**
+     * Starts the table of a mode, whose rows are formatted with <tt>format</tt>: prints
+     * <tt>columns</tt> as its header, and writes them as the header of the CSV file.
+     */
+    private void header(String format, String... columns) {
+        rowFormat = format + "%n";
+        csvFormat = format.replaceAll("%-?\\d*(\\.\\d+)?([sdf])", "%$1$2").replace(' ', ',') + "%n";
+        System.out.printf(format.replaceAll("%(-?\\d*)(\\.\\d+)?[sdf]", "%$1s") + "%n", (Object[]) columns);
+        if (csv != null) csv.printf("# %s%n", String.join(",", columns));
+    }
+
+    /**
+     * Prints a row of the table started by <tt>header</tt>, and writes it to the CSV file.
+     */
+    private void row(Object... values) {
+        System.out.printf(rowFormat, values);
+        if (csv != null) csv.printf(csvFormat, values);
+    }
+
+    /** Largest number of outstanding requests per client in <tt>-mode service</tt>. */
+    private static final int SERVICE_WINDOW = 64;
+
+    private Result measureService(Function<String[], CompletableFuture<String[]>> submit, String[] batch, int clients) {
+        ExecutorService pool = Executors.newFixedThreadPool(clients);
+        try {
+            Result result = new Result();
+            for (int i = 0; i < warmupIterations + measurementIterations; i++) {
+                Result iteration = i < warmupIterations ? new Result() : result;
+                long deadline = System.nanoTime() + iterationMillis * 1000000L;
+                List<Future<Long>> counts = new ArrayList<>();
+                long begin = System.nanoTime();
+                for (int t = 0; t < clients; t++)
+                    counts.add(pool.submit(() -> {
+                        ArrayDeque<CompletableFuture<String[]>> window = new ArrayDeque<>();
+                        long done = 0;
+                        while (System.nanoTime() < deadline) {
+                            window.add(submit.apply(batch));
+                            if (window.size() == SERVICE_WINDOW) {
+                                blackhole += window.poll().join().length;
+                                done++;
+                            }
+                        }
+                        for (CompletableFuture<String[]> f : window) blackhole += f.join().length;
+                        return done + window.size();
+                    }));
+                for (Future<Long> f : counts) iteration.operations += f.get();
+                iteration.nanos += System.nanoTime() - begin;
+                iteration.iterations++;
+            }
+            return result;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Returns the thread counts given with <tt>-threads</tt>, or 1, 2, 4, ... up to twice
+     * the available processors.
+     */
+    private int[] threadCounts() {
+        if (threads != null) return threads;
+        List<Integer> counts = new ArrayList<>();
+        for (int t = 1; t <= 2 * Runtime.getRuntime().availableProcessors(); t <<= 1) counts.add(t);
+        return counts.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * Runs <tt>threads</tt> threads that each add all of <tt>input</tt> to a fresh set,
+     * for the warm-up and measurement iterations. Fails if the set does not report
+     * exactly <tt>unique</tt> first adds.
+     */
+    private Result measureConcurrent(Supplier<Predicate<String>> sets, String[] input, int threads, int unique) {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            Result result = new Result();
+            for (int i = 0; i < warmupIterations + measurementIterations; i++) {
+                Result iteration = i < warmupIterations ? new Result() : result;
+                long deadline = System.nanoTime() + iterationMillis * 1000000L;
+                do {
+                    Predicate<String> set = sets.get();
+                    CountDownLatch start = new CountDownLatch(1);
+                    List<Future<Integer>> adds = new ArrayList<>();
+                    for (int t = 0; t < threads; t++) {
+                        int offset = (int) ((long) input.length * t / threads);
+                        adds.add(pool.submit(() -> {
+                            start.await();
+                            int first = 0;
+                            for (int j = offset; j < input.length; j++) if (set.test(input[j])) first++;
+                            for (int j = 0; j < offset; j++) if (set.test(input[j])) first++;
+                            return first;
+                        }));
+                    }
+                    long begin = System.nanoTime();
+                    start.countDown();
+                    int first = 0;
+                    for (Future<Integer> f : adds) first += f.get();
+                    iteration.nanos += System.nanoTime() - begin;
+                    iteration.operations += (long) threads * input.length;
+                    if (first != unique)
+                        throw new AssertionError(first + " first adds of " + unique + " unique words");
+                } while (System.nanoTime() < deadline);
+                iteration.iterations++;
+            }
+            return result;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Result of measuring one engine on one input.
+     */
+    static final class Result {
+        long operations;
+        long nanos;
+        long allocatedBytes;
+        long gcCount;
+        long gcMillis;
+        int iterations;
+
+        double opsPerSecond() {return operations * 1e9 / nanos;}
+        double nanosPerOp() {return (double) nanos / operations;}
+        double bytesPerOp() {return allocatedBytes < 0 ? -1 : (double) allocatedBytes / operations;}
+    }
+
+    /**
+     * Runs <tt>dedup</tt> on fresh copies of <tt>input</tt>, first for the warm-up iterations,
+     * then for the measurement iterations, and returns the totals of the measurement iterations.
+     */
+    Result measure(Dedup dedup, String[] input) {
+        String[] copy = new String[input.length];
+        for (int i = 0; i < warmupIterations; i++) iteration(dedup, input, copy, new Result());
+        Result result = new Result();
+        for (int i = 0; i < measurementIterations; i++) iteration(dedup, input, copy, result);
+        return result;
+    }
+
+    private void iteration(Dedup dedup, String[] input, String[] copy, Result result) {
+        long gcCount = gcCount(), gcMillis = gcMillis();
+        long deadline = System.nanoTime() + iterationMillis * 1000000L;
+        do {
+            System.arraycopy(input, 0, copy, 0, input.length);
+            long allocated = allocatedBytes();
+            long start = System.nanoTime();
+            String[] output = dedup.dedup(copy);
+            long elapsed = System.nanoTime() - start;
+            allocated = allocated < 0 ? -1 : allocatedBytes() - allocated;
+            blackhole += output.length;
+            result.operations++;
+            result.nanos += elapsed;
+            result.allocatedBytes = allocated < 0 || result.allocatedBytes < 0 ? -1 : result.allocatedBytes + allocated;
+        } while (System.nanoTime() < deadline);
+        result.gcCount += gcCount() - gcCount;
+        result.gcMillis += gcMillis() - gcMillis;
+        result.iterations++;
+    }
+
+    /**
+     * Returns the distinct words of <tt>file</tt>.
+     */
+    static String[] vocabulary(String file) {
+        try {
+            return Dedup.openAddressingDedup(new Utils.TokenFile(file).toArray());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Returns <tt>size</tt> words in which a fraction <tt>dups</tt> are duplicates.
+     * The unique words are taken from <tt>vocabulary</tt>, and made distinct with a
+     * suffix if the vocabulary is too small. Each unique word occurs at least once,
+     * the rest are drawn uniformly, and the result is shuffled.
+     */
+    static String[] input(String[] vocabulary, int size, double dups, long seed) {
+        Random random = new Random(seed);
+        int unique = Math.max(1, (int) Math.round(size * (1 - dups)));
+        String[] uniques = new String[Math.min(unique, size)];
+        for (int i = 0; i < uniques.length; i++) {
+            String word = vocabulary[i % vocabulary.length];
+            uniques[i] = i < vocabulary.length ? word : word + "#" + i / vocabulary.length;
+        }
+        String[] input = new String[size];
+        for (int i = 0; i < size; i++)
+            input[i] = i < uniques.length ? uniques[i] : uniques[random.nextInt(uniques.length)];
+        for (int i = size - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            String t = input[i];
+            input[i] = input[j];
+            input[j] = t;
+        }
+        return input;
+    }
+
+    /**
+     * Returns <tt>size</tt> words with a fraction <tt>dups</tt> of duplicates: from
+     * <tt>input</tt>, or from <tt>workload</tt> if a skew or order was given.
+     */
+    String[] input(String[] vocabulary, int size, double dups) {
+        return skew == null && order == null ? input(vocabulary, size, dups, 42) : workload(vocabulary, size, dups).generate();
+    }
+
+    /**
+     * Returns a <tt>Workload</tt> of <tt>size</tt> words drawn from the first
+     * <tt>size * (1 - dups)</tt> words of <tt>vocabulary</tt>, with the skew and order
+     * given on the command line.
+     */
+    Workload workload(String[] vocabulary, int size, double dups) {
+        return new Workload()
+                .vocabulary(vocabulary)
+                .size(size)
+                .cardinality(Math.max(1, (int) Math.round(size * (1 - dups))))
+                .skew(skew == null ? Workload.Skew.UNIFORM : skew)
+                .order(order == null ? Workload.Order.RANDOM : order);
+    }
+
+    private static long allocatedBytes() {
+        if (THREADS instanceof com.sun.management.ThreadMXBean)
+            return ((com.sun.management.ThreadMXBean) THREADS).getThreadAllocatedBytes(Thread.currentThread().getId());
+        return -1;
+    }
+
+    private static long gcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) count += Math.max(0, gc.getCollectionCount());
+        return count;
+    }
+
+    private static long gcMillis() {
+        long millis = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) millis += Math.max(0, gc.getCollectionTime());
+        return millis;
+    }
+
+    private static PrintStream createFile(String fileName) {
+        try {
+            PrintStream output = new PrintStream(fileName);
+            output.printf("# Measurements: %s%n", LocalDateTime.now());
+            return output;
+        } catch (FileNotFoundException e) {
+            throw new RuntimeException("ERROR ON OPENING FILE '" + fileName + "'\n");
+        }
+    }
+}
@@ -0,0 +1,153 @@
+import java.util.Arrays;
+
+/**
+ * Approximate deduplication with a Bloom filter.
+ *
+ * The filter is sized from the expected number of unique words <i>n</i> and a target
+ * false positive rate <i>p</i>: <i>m = -n ln p / (ln 2)<sup>2</sup></i> bits and
+ * <i>k = (m/n) ln 2</i> hash functions. A word is kept if the filter has not seen it,
+ * so the output never contains duplicates, but a unique word is dropped with
+ * probability about <i>p</i>. Memory is <i>m</i>/8 bytes no matter how long the words are.
+ *
+ * The <i>k</i> bit positions are <i>h<sub>1</sub> + i h<sub>2</sub></i>, where both
+ * 64 bit hashes come from a single pass over the characters of the word.
+ */
+class BloomDedup implements Dedup {
+    private static final double LN2 = Math.log(2);
+
+    private final long[] bits;
+    private final long numBits;
+    private final int numHashes;
+    private final long expectedSize;
+    private final double targetFpp;
+
+    /**
+     * Constructs a filter for <tt>expectedSize</tt> unique words, with false positive rate
+     * <tt>fpp</tt> when that many words have been added.
+     */
+    BloomDedup(long expectedSize, double fpp) {
+        if (expectedSize < 1) throw new IllegalArgumentException("expectedSize must be positive: " + expectedSize);
+        if (!(fpp > 0 && fpp < 1)) throw new IllegalArgumentException("fpp must be between 0 and 1: " + fpp);
+        long m = (long) Math.ceil(-expectedSize * Math.log(fpp) / (LN2 * LN2));
+        m = Math.max(64, (m + 63) & ~63L);
+        if (m >>> 6 > Integer.MAX_VALUE - 8) throw new IllegalArgumentException("filter too large: " + m + " bits");
+        this.bits = new long[(int) (m >>> 6)];
+        this.numBits = m;
+        this.numHashes = Math.max(1, (int) Math.round((double) m / expectedSize * LN2));
+        this.expectedSize = expectedSize;
+        this.targetFpp = fpp;
+    }
+
+    /**
+     * Clears the filter, and keeps the first occurrence of each word the filter has not
+     * seen, compacted in place like <tt>BasicDedup</tt>.
+     */
+    public String[] dedup(String[] strings) {
+        clear();
+        int count = 0;
+        for (String current : strings)
+            if (add(current))
+                strings[count++] = current;
+        return Arrays.copyOf(strings, count);
+    }
+
+    public int dedupInto(String[] in, int from, int to, String[] out) {
+        clear();
+        int count = 0;
+        for (int i = from; i < to; i++)
+            if (add(in[i]))
+                out[count++] = in[i];
+        return count;
+    }
+
+    public boolean isInPlace() {return true;}
+
+    /**
+     * Adds <tt>s</tt> to the filter. Returns <tt>true</tt> if the filter had not seen it,
+     * and <tt>false</tt> if it had, or if all its bits were already set by other words.
+     */
+    boolean add(String s) {
+        long h1 = hash1(s), h2 = hash2(s, h1);
+        boolean added = false;
+        for (int i = 0; i < numHashes; i++) {
+            long bit = ((h1 + i * h2) & Long.MAX_VALUE) % numBits;
+            int word = (int) (bit >>> 6);
+            long mask = 1L << bit;
+            if ((bits[word] & mask) == 0) {
+                bits[word] |= mask;
+                added = true;
+            }
+        }
+        return added;
+    }
+
+    /**
+     * Returns <tt>true</tt> if <tt>s</tt> may have been added. Returns <tt>false</tt> only
+     * if it certainly has not.
+     */
+    boolean mightContain(String s) {
+        long h1 = hash1(s), h2 = hash2(s, h1);
+        for (int i = 0; i < numHashes; i++) {
+            long bit = ((h1 + i * h2) & Long.MAX_VALUE) % numBits;
+            if ((bits[(int) (bit >>> 6)] & (1L << bit)) == 0) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Removes all words from the filter.
+     */
+    void clear() {Arrays.fill(bits, 0);}
+
+    /**
+     * Returns the memory used by the filter bits, in bytes.
+     */
+    long memoryBytes() {return (long) bits.length * Long.BYTES;}
+
+    /**
+     * Returns the number of hash functions.
+     */
+    int numHashes() {return numHashes;}
+
+    /**
+     * Returns the false positive rate the filter was sized for.
+     */
+    double targetFpp() {return targetFpp;}
+
+    /**
+     * Returns the number of unique words the filter was sized for.
+     */
+    long expectedSize() {return expectedSize;}
+
+    /**
+     * Returns the estimated false positive rate in the current state,
+     * <i>(fraction of bits set)<sup>k</sup></i>.
+     */
+    double estimatedFpp() {
+        long set = 0;
+        for (long word : bits) set += Long.bitCount(word);
+        return Math.pow((double) set / numBits, numHashes);
+    }
+
+    private static long hash1(String s) {
+        if (s == null) return 0;
+        long h = 0xCBF29CE484222325L;
+        for (int i = 0, n = s.length(); i < n; i++)
+            h = (h ^ s.charAt(i)) * 0x100000001B3L;
+        return mix(h);
+    }
+
+    private static long hash2(String s, long h1) {
+        return mix(h1 ^ (s == null ? 0 : s.length())) | 1;
+    }
+
+    // Finaliser of MurmurHash3
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB93FE1A85E53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,138 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Deduplication of the words of a file as raw UTF-8 bytes, without creating a
+ * <tt>String</tt> per word.
+ *
+ * The words are read as slices of a <tt>Utils.TokenFile</tt>. Each unique word is copied
+ * once into a <tt>byte[]</tt> arena, followed by a newline, so the arena is also the output:
+ * the unique words in first occurrence order, one per line. The index is an open addressing
+ * table of arena offsets, with the hash codes and lengths in parallel <tt>int[]</tt>s.
+ *
+ * Two words are the same if their bytes are the same, which for valid UTF-8 is the
+ * same as <tt>String.equals</tt>.
+ */
+class ByteDedup {
+    private static final int MIN_CAPACITY = 16;
+
+    private byte[] arena;
+    private int used;
+    private int count;
+
+    private int[] slots;   // arena offset + 1, 0 is empty
+    private int[] hashes;
+    private int[] lengths;
+    private int mask;
+
+    /**
+     * Constructs an engine sized for <tt>expectedSize</tt> unique words.
+     */
+    ByteDedup(int expectedSize) {
+        allocate(StringTable.capacityFor(expectedSize));
+        arena = new byte[Math.max(64, expectedSize * 8)];
+    }
+
+    /**
+     * Reads the words of <tt>input</tt>, and writes the unique words to <tt>output</tt>,
+     * one word per line, in first occurrence order.
+     */
+    static void dedupFile(String input, String output) throws IOException {
+        Utils.TokenFile file = new Utils.TokenFile(input);
+        ByteDedup dedup = new ByteDedup(file.size() / 4);
+        dedup.add(file);
+        try (FileChannel out = FileChannel.open(Paths.get(output),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            dedup.writeTo(out);
+        }
+    }
+
+    /**
+     * Adds all the words of <tt>file</tt>. Returns the number of new unique words.
+     */
+    int add(Utils.TokenFile file) {
+        ByteBuffer bytes = file.buffer();
+        int before = count;
+        for (int i = 0, n = file.size(); i < n; i++)
+            add(bytes, file.offset(i), file.length(i));
+        return count - before;
+    }
+
+    /**
+     * Adds the word in <tt>bytes</tt> at <tt>offset</tt>. Returns <tt>true</tt> if it was
+     * not seen before.
+     */
+    boolean add(ByteBuffer bytes, int offset, int length) {
+        int h = hash(bytes, offset, length);
+        int i = (h * 0x9E3779B9) >>> Integer.numberOfLeadingZeros(mask);
+        for (int slot; (slot = slots[i]) != 0; i = (i + 1) & mask)
+            if (hashes[i] == h && lengths[i] == length && equals(slot - 1, bytes, offset, length))
+                return false;
+
+        if (used + length + 1 > arena.length)
+            arena = Arrays.copyOf(arena, Math.max(used + length + 1, arena.length * 2));
+        for (int j = 0; j < length; j++) arena[used + j] = bytes.get(offset + j);
+        slots[i] = used + 1;
+        hashes[i] = h;
+        lengths[i] = length;
+        used += length;
+        arena[used++] = '\n';
+        if (++count > slots.length / 2) grow();
+        return true;
+    }
+
+    /**
+     * Returns the number of unique words.
+     */
+    int size() {return count;}
+
+    /**
+     * Writes the unique words to <tt>out</tt>, one per line, in first occurrence order.
+     */
+    void writeTo(WritableByteChannel out) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(arena, 0, used);
+        while (buffer.hasRemaining()) out.write(buffer);
+    }
+
+    // FNV-1a
+    private static int hash(ByteBuffer bytes, int offset, int length) {
+        int h = 0x811C9DC5;
+        for (int j = 0; j < length; j++)
+            h = (h ^ bytes.get(offset + j)) * 0x01000193;
+        return h;
+    }
+
+    private boolean equals(int arenaOffset, ByteBuffer bytes, int offset, int length) {
+        for (int j = 0; j < length; j++)
+            if (arena[arenaOffset + j] != bytes.get(offset + j))
+                return false;
+        return true;
+    }
+
+    private void allocate(int capacity) {
+        capacity = Math.max(capacity, MIN_CAPACITY);
+        slots = new int[capacity];
+        hashes = new int[capacity];
+        lengths = new int[capacity];
+        mask = capacity - 1;
+    }
+
+    private void grow() {
+        int[] oldSlots = slots, oldHashes = hashes, oldLengths = lengths;
+        allocate(oldSlots.length << 1);
+        int shift = Integer.numberOfLeadingZeros(mask);
+        for (int j = 0; j < oldSlots.length; j++) {
+            if (oldSlots[j] == 0) continue;
+            int i = (oldHashes[j] * 0x9E3779B9) >>> shift;
+            while (slots[i] != 0) i = (i + 1) & mask;
+            slots[i] = oldSlots[j];
+            hashes[i] = oldHashes[j];
+            lengths[i] = oldLengths[j];
+        }
+    }
+}
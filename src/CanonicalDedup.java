@@ -0,0 +1,28 @@
+/**
+ * Deduplication that returns canonical instances from an <tt>Interner</tt>, for output
+ * that is kept for a long time. Any engine does the deduplication; only the unique
+ * words are interned.
+ */
+class CanonicalDedup implements Dedup {
+    private final Dedup engine;
+    private final Interner interner;
+
+    CanonicalDedup(Dedup engine, Interner interner) {
+        this.engine = engine;
+        this.interner = interner;
+    }
+
+    public String[] dedup(String[] strings) {
+        String[] unique = engine.dedup(strings);
+        interner.internAll(unique, 0, unique.length);
+        return unique;
+    }
+
+    public int dedupInto(String[] in, int from, int to, String[] out) {
+        int count = engine.dedupInto(in, from, to, out);
+        interner.internAll(out, 0, count);
+        return count;
+    }
+
+    public boolean isInPlace() {return engine.isInPlace();}
+}
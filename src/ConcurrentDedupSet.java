@@ -0,0 +1,97 @@
+/**
+ * A set of seen words shared by many threads, for ingestion where every producer
+ * deduplicates against one global set.
+ *
+ * The words are split over a power of two number of stripes by their hash code, and each
+ * stripe is a <tt>StringTable</tt> guarded by its own lock. Threads only contend when they
+ * hit the same stripe at the same time, and a stripe grows without blocking the others.
+ * Like in <tt>ParallelDedup</tt>, the stripe is picked from the low bits of the hash code,
+ * while the table inside it indexes on the high bits.
+ */
+class ConcurrentDedupSet {
+    private final Stripe[] stripes;
+    private final int mask;
+
+    /**
+     * A table, guarded by the monitor of the stripe.
+     */
+    private static final class Stripe {
+        final StringTable table;
+
+        Stripe(int expectedSize) {table = new StringTable(expectedSize);}
+    }
+
+    /**
+     * Constructs a set with four stripes per available processor.
+     */
+    ConcurrentDedupSet() {
+        this(0, 4 * Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Constructs a set sized for <tt>expectedSize</tt> words, with at least
+     * <tt>concurrency</tt> stripes.
+     */
+    ConcurrentDedupSet(int expectedSize, int concurrency) {
+        int n = 1;
+        while (n < concurrency && n < 1 << 16) n <<= 1;
+        stripes = new Stripe[n];
+        for (int i = 0; i < n; i++) stripes[i] = new Stripe(expectedSize / n);
+        mask = n - 1;
+    }
+
+    /**
+     * Adds <tt>s</tt> to the set. Returns <tt>true</tt> if no thread has added it before,
+     * so that exactly one caller sees <tt>true</tt> for each distinct word.
+     */
+    boolean firstSeen(String s) {
+        Stripe stripe = stripe(s);
+        synchronized (stripe) {
+            return stripe.table.add(s);
+        }
+    }
+
+    /**
+     * Returns <tt>true</tt> if <tt>s</tt> has been added.
+     */
+    boolean contains(String s) {
+        Stripe stripe = stripe(s);
+        synchronized (stripe) {
+            return stripe.table.contains(s);
+        }
+    }
+
+    /**
+     * Returns the number of distinct words added. Not a snapshot, if other
+     * threads are adding at the same time.
+     */
+    int size() {
+        int size = 0;
+        for (Stripe stripe : stripes)
+            synchronized (stripe) {
+                size += stripe.table.size();
+            }
+        return size;
+    }
+
+    /**
+     * Removes all words.
+     */
+    void clear() {
+        for (Stripe stripe : stripes)
+            synchronized (stripe) {
+                stripe.table.clear();
+            }
+    }
+
+    /**
+     * Returns the number of stripes.
+     */
+    int concurrency() {return stripes.length;}
+
+    private Stripe stripe(String s) {
+        if (s == null) return stripes[0];
+        int h = s.hashCode();
+        return stripes[(h ^ (h >>> 16)) & mask];
+    }
+}
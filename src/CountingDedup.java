@@ -0,0 +1,308 @@
+import java.util.Arrays;
+
+/**
+ * Deduplication that also counts how often each word occurs, in the same pass.
+ *
+ * A <tt>StringIntMap</tt> maps each word to its rank among the unique words, in first
+ * occurrence order, and the counts are kept in a plain <tt>int[]</tt> indexed by that
+ * rank, so counting costs one probe and one increment per word, with no boxing.
+ * <tt>count</tt> returns the words and counts as <tt>Counts</tt>, which can be sorted or
+ * cut down to the <i>k</i> most frequent words with a bounded heap.
+ *
+ * For heavy hitters of streams too large to count exactly, <tt>SpaceSaving</tt> keeps
+ * approximate counts of the most frequent words in fixed memory.
+ */
+class CountingDedup implements Dedup {
+    private final StringIntMap ranks = new StringIntMap(0);
+
+    public String[] dedup(String[] strings) {
+        return count(strings, 0, strings.length).words;
+    }
+
+    public int dedupInto(String[] in, int from, int to, String[] out) {
+        Counts counts = count(in, from, to);
+        System.arraycopy(counts.words, 0, out, 0, counts.size());
+        return counts.size();
+    }
+
+    /**
+     * Returns the unique words of <tt>words</tt> and their counts, in first occurrence order.
+     */
+    Counts count(String[] words) {
+        return count(words, 0, words.length);
+    }
+
+    /**
+     * Returns the unique words of <tt>words[from..to)</tt> and their counts, in first
+     * occurrence order.
+     */
+    Counts count(String[] words, int from, int to) {
+        ranks.reset(to - from);
+        String[] unique = new String[to - from];
+        int[] counts = new int[to - from];
+        int n = 0, nullRank = -1;
+        for (int i = from; i < to; i++) {
+            String word = words[i];
+            int rank = word == null ? nullRank : ranks.putIfAbsent(word, n);
+            if (rank >= 0) {
+                counts[rank]++;
+                continue;
+            }
+            if (word == null) nullRank = n;
+            unique[n] = word;
+            counts[n++] = 1;
+        }
+        return new Counts(Arrays.copyOf(unique, n), Arrays.copyOf(counts, n));
+    }
+
+    /**
+     * Returns the <tt>k</tt> most frequent words of <tt>words</tt>, most frequent first.
+     */
+    static Counts topK(String[] words, int k) {
+        return new CountingDedup().count(words).top(k);
+    }
+
+    /**
+     * Unique words and their counts, as two parallel arrays.
+     */
+    static final class Counts {
+        private final String[] words;
+        private final int[] counts;
+
+        Counts(String[] words, int[] counts) {
+            this.words = words;
+            this.counts = counts;
+        }
+
+        /** Returns the number of unique words. */
+        int size() {return words.length;}
+
+        /** Returns the <tt>i</tt>th word. */
+        String word(int i) {return words[i];}
+
+        /** Returns the count of the <tt>i</tt>th word. */
+        int count(int i) {return counts[i];}
+
+        /** Returns the unique words. */
+        String[] words() {return words.clone();}
+
+        /** Returns the counts, parallel to <tt>words()</tt>. */
+        int[] counts() {return counts.clone();}
+
+        /** Returns the sum of the counts. */
+        long total() {
+            long total = 0;
+            for (int c : counts) total += c;
+            return total;
+        }
+
+        /**
+         * Returns the words in the order <tt>SortDedup</tt> would return them, with their
+         * counts. <tt>null</tt> comes first.
+         */
+        Counts sorted() {
+            int[] order = new int[words.length];
+            for (int i = 0; i < order.length; i++) order[i] = i;
+            sortByWord(order, order.clone(), 0, order.length);
+            return permuted(order, order.length);
+        }
+
+        /**
+         * Merge sorts the ranks <tt>a[lo..hi)</tt> by their words, with <tt>null</tt> first,
+         * given <tt>aux</tt> as a copy of <tt>a</tt>.
+         */
+        private void sortByWord(int[] a, int[] aux, int lo, int hi) {
+            if (hi - lo < 2) return;
+            int mid = (lo + hi) >>> 1;
+            sortByWord(aux, a, lo, mid);
+            sortByWord(aux, a, mid, hi);
+            for (int i = lo, j = mid, k = lo; k < hi; k++)
+                a[k] = j == hi || i < mid && compareWords(aux[i], aux[j]) <= 0 ? aux[i++] : aux[j++];
+        }
+
+        private int compareWords(int a, int b) {
+            String x = words[a], y = words[b];
+            return x == null ? (y == null ? 0 : -1) : y == null ? 1 : x.compareTo(y);
+        }
+
+        /**
+         * Returns the <tt>k</tt> most frequent words, most frequent first. Ties go to the word
+         * that came first. Uses a min-heap of <tt>k</tt> entries, so O(n log k).
+         */
+        Counts top(int k) {
+            k = Math.min(k, words.length);
+            int[] heap = new int[k]; // ranks, least frequent at the root
+            int size = 0;
+            for (int i = 0; i < words.length; i++) {
+                if (size < k) {
+                    heap[size] = i;
+                    siftUp(heap, size++);
+                } else if (k > 0 && less(heap[0], i)) {
+                    heap[0] = i;
+                    siftDown(heap, 0, size);
+                }
+            }
+            int[] order = new int[k];
+            for (int i = k - 1; i >= 0; i--) {
+                order[i] = heap[0];
+                heap[0] = heap[i];
+                siftDown(heap, 0, i);
+            }
+            return permuted(order, k);
+        }
+
+        /** Heap order: fewer occurrences first, then the later of equal counts. */
+        private boolean less(int a, int b) {
+            return counts[a] < counts[b] || counts[a] == counts[b] && a > b;
+        }
+
+        private void siftUp(int[] heap, int i) {
+            while (i > 0 && less(heap[i], heap[(i - 1) >>> 1])) {
+                int parent = (i - 1) >>> 1;
+                swap(heap, i, parent);
+                i = parent;
+            }
+        }
+
+        private void siftDown(int[] heap, int i, int size) {
+            for (int child; (child = 2 * i + 1) < size; i = child) {
+                if (child + 1 < size && less(heap[child + 1], heap[child])) child++;
+                if (!less(heap[child], heap[i])) break;
+                swap(heap, i, child);
+            }
+        }
+
+        private static void swap(int[] a, int i, int j) {
+            int t = a[i];
+            a[i] = a[j];
+            a[j] = t;
+        }
+
+        private Counts permuted(int[] order, int n) {
+            String[] w = new String[n];
+            int[] c = new int[n];
+            for (int i = 0; i < n; i++) {
+                w[i] = words[order[i]];
+                c[i] = counts[order[i]];
+            }
+            return new Counts(w, c);
+        }
+
+        public String toString() {
+            StringBuilder sb = new StringBuilder("{");
+            for (int i = 0; i < words.length; i++)
+                sb.append(i == 0 ? "" : ", ").append(words[i]).append('=').append(counts[i]);
+            return sb.append('}').toString();
+        }
+    }
+
+    /**
+     * The Space-Saving algorithm (Metwally, Agrawal and El Abbadi) for the heavy hitters of
+     * a stream, in fixed memory.
+     *
+     * Keeps <tt>capacity</tt> counters. A word that has a counter increments it; a word
+     * that has none takes over the smallest counter, and inherits its count as error. So
+     * every count is an overestimate by at most its error, and any word that occurs more
+     * than <tt>n / capacity</tt> times in a stream of <tt>n</tt> words is sure to have a
+     * counter. The counters are a min-heap, with a <tt>StringIntMap</tt> from word to heap
+     * position, so each word costs O(log capacity).
+     */
+    static final class SpaceSaving {
+        private final String[] words;
+        private final int[] counts;
+        private final int[] errors;
+        private final StringIntMap positions;
+        private int size;
+        private long total;
+
+        SpaceSaving(int capacity) {
+            if (capacity < 1) throw new IllegalArgumentException("capacity must be positive: " + capacity);
+            words = new String[capacity];
+            counts = new int[capacity];
+            errors = new int[capacity];
+            positions = new StringIntMap(capacity);
+        }
+
+        /**
+         * Counts one occurrence of <tt>word</tt>, which must not be <tt>null</tt>.
+         */
+        void offer(String word) {
+            total++;
+            int i = positions.get(word);
+            if (i == StringIntMap.MISSING && size < words.length) {
+                i = size++;
+                words[i] = word;
+                counts[i] = 1;
+                errors[i] = 0;
+                positions.put(word, i);
+                siftUp(i);
+                return;
+            }
+            if (i == StringIntMap.MISSING) {
+                i = 0; // the smallest counter
+                positions.remove(words[0]);
+                errors[0] = counts[0];
+                words[0] = word;
+                positions.put(word, 0);
+            }
+            counts[i]++;
+            siftDown(i);
+        }
+
+        /**
+         * Returns the estimated count of <tt>word</tt>: at least its true count, and
+         * at most <tt>error(word)</tt> more. 0 if it has no counter.
+         */
+        int estimate(String word) {
+            int i = positions.get(word);
+            return i == StringIntMap.MISSING ? 0 : counts[i];
+        }
+
+        /**
+         * Returns how much <tt>estimate(word)</tt> may overestimate the count of <tt>word</tt>.
+         */
+        int error(String word) {
+            int i = positions.get(word);
+            return i == StringIntMap.MISSING ? 0 : errors[i];
+        }
+
+        /**
+         * Returns the number of words offered.
+         */
+        long total() {return total;}
+
+        /**
+         * Returns the <tt>k</tt> words with the highest estimated counts, highest first.
+         */
+        Counts top(int k) {
+            return new Counts(Arrays.copyOf(words, size), Arrays.copyOf(counts, size)).top(k);
+        }
+
+        private void siftUp(int i) {
+            for (int parent; i > 0 && counts[i] < counts[parent = (i - 1) >>> 1]; i = parent)
+                swap(i, parent);
+        }
+
+        private void siftDown(int i) {
+            for (int child; (child = 2 * i + 1) < size; i = child) {
+                if (child + 1 < size && counts[child + 1] < counts[child]) child++;
+                if (counts[child] >= counts[i]) break;
+                swap(i, child);
+            }
+        }
+
+        private void swap(int i, int j) {
+            String w = words[i];
+            words[i] = words[j];
+            words[j] = w;
+            int c = counts[i];
+            counts[i] = counts[j];
+            counts[j] = c;
+            int e = errors[i];
+            errors[i] = errors[j];
+            errors[j] = e;
+            positions.put(words[i], i);
+            positions.put(words[j], j);
+        }
+    }
+}
@@ -8,6 +8,14 @@ import java.util.*;
  * <li> Methods for deduplication of <tt>String[]</tt>-objects.</li>
  * <li> Factory methods that produce <tt>Dedup</tt>-implementations of different types</li>
  * </ul>
+ *
+ * There are two ways to deduplicate. <tt>dedup</tt> returns a new array, and may overwrite
+ * its input on the way (see <tt>isInPlace</tt>). <tt>dedupInto</tt> writes to a buffer the
+ * caller owns, and leaves the input alone unless the buffer is the input itself. Called
+ * repeatedly with reused buffers, <tt>dedupInto</tt> allocates nothing in the engines that
+ * keep their own tables (<tt>BasicDedup</tt>, <tt>OpenAddressingDedup</tt>, <tt>NumericDedup</tt>,
+ * <tt>RadixSortDedup</tt>, <tt>BloomDedup</tt> and <tt>AdaptiveDedup</tt> below its parallel
+ * threshold). Engines that keep buffers between calls are not thread safe.
  */
 public interface Dedup {
     /*
@@ -59,6 +67,65 @@ public interface Dedup {
         return newSortDedup().dedup(strs);
     }
 
+    /**
+     * Deduplication method that sorts the words like <tt>sortDedup</tt>, and returns
+     * the unique words front coded, for large sorted output of similar words.
+     *
+     * @see FrontCodedWords
+     */
+    static FrontCodedWords frontCodedDedup(String[] strs) {
+        return new FrontCodedWords(sortDedup(strs));
+    }
+
+    /**
+     * Deduplication method that use an open addressing hash table to
+     * remove duplicates from a list of words, keeping the first occurrence order.
+     */
+    static String[] openAddressingDedup(String[] strs) {
+        return newOpenAddressingDedup().dedup(strs);
+    }
+
+    /**
+     * Returns an estimate of the number of unique words in <tt>strs</tt>, within about 1 %,
+     * without deduplicating. Useful as a size hint for the hash based factories.
+     *
+     * @see HyperLogLog
+     */
+    static int estimateDistinct(String[] strs) {
+        return (int) Math.min(Integer.MAX_VALUE, HyperLogLog.estimateDistinct(strs));
+    }
+
+    /**
+     * Deduplication method for numbers. Returns the values of <tt>values</tt>
+     * with the duplicates removed, in first occurrence order.
+     *
+     * @see NumericDedup
+     */
+    static long[] numericDedup(long[] values) {
+        return NumericDedup.dedup(values);
+    }
+
+    /**
+     * Deduplication method for numbers. Returns the values of <tt>values</tt>
+     * with the duplicates removed, in first occurrence order.
+     *
+     * @see NumericDedup
+     */
+    static int[] numericDedup(int[] values) {
+        return NumericDedup.dedup(values);
+    }
+
+    /**
+     * Deduplication method that reads the words of the file <tt>input</tt> as raw bytes,
+     * and writes the unique words to the file <tt>output</tt>, one per line, in first
+     * occurrence order. No <tt>String</tt>-objects are created for the words.
+     *
+     * @see ByteDedup
+     */
+    static void dedupFile(String input, String output) throws java.io.IOException {
+        ByteDedup.dedupFile(input, output);
+    }
+
     /**
      * Returns a new <tt>Dedup</tt>-object.
      *
@@ -68,6 +135,17 @@ public interface Dedup {
         return new HashSetDedup();
     }
 
+    /**
+     * Returns a new <tt>Dedup</tt>-object, with a <tt>HashSet</tt> sized for
+     * <tt>expectedSize</tt> unique words, so that it does not rehash.
+     *
+     * @see hashSetDedup
+     * @see estimateDistinct
+     */
+    static Dedup newHashSetDedup(int expectedSize) {
+        return new HashSetDedup(expectedSize);
+    }
+
     
     /*
      * Static factory methods
@@ -102,6 +180,209 @@ public interface Dedup {
         return new SortDedup();
     }
 
+    /**
+     * Returns a new <tt>Dedup</tt>-object.
+     * @see openAddressingDedup
+     */
+    static Dedup newOpenAddressingDedup() {
+        return new OpenAddressingDedup();
+    }
+
+    /**
+     * Returns a new <tt>Dedup</tt>-object, with a table sized for
+     * <tt>expectedSize</tt> unique words instead of the input length.
+     * @see openAddressingDedup
+     * @see estimateDistinct
+     */
+    static Dedup newOpenAddressingDedup(int expectedSize) {
+        return new OpenAddressingDedup(expectedSize);
+    }
+
+    /**
+     * Returns a new <tt>Dedup</tt>-object that keeps the first occurrence of each word,
+     * in input order, like <tt>newArrayListDedup</tt>, in expected linear time.
+     * @see OrderedDedup
+     */
+    static Dedup newOrderedDedup() {
+        return new OrderedDedup(false);
+    }
+
+    /**
+     * Returns a new <tt>Dedup</tt>-object that keeps the last occurrence of each word,
+     * in input order.
+     * @see OrderedDedup
+     */
+    static Dedup newKeepLastDedup() {
+        return new OrderedDedup(true);
+    }
+
+    /**
+     * Returns a new <tt>Dedup</tt>-object backed by a Swiss table, which compares eight
+     * hash tags at a time. The output is in first occurrence order. Experimental, as it is
+     * slower than <tt>newOpenAddressingDedup</tt> in <tt>Benchmark</tt>.
+     * @see SwissDedup
+     */
+    static Dedup newSwissDedup() {
+        return new SwissDedup();
+    }
+
+    /**
+     * Returns a new <tt>Dedup</tt>-object that sorts with a radix sort, and removes the
+     * duplicates while sorting. The output is in the same order as that of <tt>SortDedup</tt>.
+     * @see RadixSortDedup
+     */
+    static Dedup newRadixSortDedup() {
+        return new RadixSortDedup();
+    }
+
+    /**
+     * Returns a <tt>RadixSortDedup</tt> that sorts input of decimal integers by value, so
+     * that such input comes out in numeric order rather than in the order of <tt>SortDedup</tt>.
+     * @see RadixSortDedup
+     */
+    static Dedup newNumericSortDedup() {
+        return new RadixSortDedup(true);
+    }
+
+    /**
+     * Returns a new <tt>Dedup</tt>-object that picks an engine from the size,
+     * order, content and duplicate ratio of the input. The output is in first
+     * occurrence order.
+     * @see AdaptiveDedup
+     */
+    static Dedup newAdaptiveDedup() {
+        return new AdaptiveDedup();
+    }
+
+    /**
+     * Returns a new <tt>Dedup</tt>-object for words that are decimal integers.
+     * Falls back to <tt>newOpenAddressingDedup</tt> if they are not.
+     * @see NumericDedup
+     */
+    static Dedup newNumericDedup() {
+        return new NumericDedup();
+    }
+
+    /**
+     * Returns a new <tt>Dedup</tt>-object that removes duplicates with a Bloom filter
+     * sized for <tt>expectedSize</tt> unique words. Each unique word is dropped with
+     * probability about <tt>fpp</tt>.
+     * @see BloomDedup
+     */
+    static Dedup newBloomDedup(long expectedSize, double fpp) {
+        return new BloomDedup(expectedSize, fpp);
+    }
+
+    /**
+     * Returns a new <tt>Dedup</tt>-object that runs on <tt>parallelism</tt> threads.
+     * The order of the output is unspecified.
+     * @see ParallelDedup
+     */
+    static Dedup newParallelDedup(int parallelism) {
+        return newParallelDedup(parallelism, false);
+    }
+
+    /**
+     * Returns a new <tt>Dedup</tt>-object that runs on <tt>parallelism</tt> threads.
+     * If <tt>keepOrder</tt> is set, the output is in first occurrence order.
+     * @see ParallelDedup
+     */
+    static Dedup newParallelDedup(int parallelism, boolean keepOrder) {
+        return new ParallelDedup(parallelism, keepOrder);
+    }
+
+    /**
+     * Returns a new <tt>Dedup</tt>-object that sorts runs of
+     * <tt>ExternalSortDedup.DEFAULT_RUN_SIZE</tt> words, and spills them to the
+     * default temporary-file directory.
+     * @see ExternalSortDedup
+     */
+    static Dedup newExternalSortDedup() {
+        return newExternalSortDedup(ExternalSortDedup.DEFAULT_RUN_SIZE, null);
+    }
+
+    /**
+     * Returns a new <tt>Dedup</tt>-object that sorts runs of <tt>runSize</tt> words,
+     * and spills them to <tt>tempDir</tt>. Gives the same output as <tt>SortDedup</tt>.
+     * @see ExternalSortDedup
+     */
+    static Dedup newExternalSortDedup(int runSize, java.nio.file.Path tempDir) {
+        return new ExternalSortDedup(runSize, tempDir);
+    }
+
+    /**
+     * Opens the persistent set of seen words in <tt>directory</tt>, creating it if
+     * needed, for deduplication against earlier runs.
+     * @see DedupIndex
+     */
+    static DedupIndex openIndex(java.nio.file.Path directory) throws java.io.IOException {
+        return DedupIndex.open(directory);
+    }
+
+    /**
+     * Returns the unique words of <tt>words</tt> in first occurrence order, with how
+     * often each occurs, counted in the same pass.
+     * @see CountingDedup
+     */
+    static CountingDedup.Counts count(String[] words) {
+        return new CountingDedup().count(words);
+    }
+
+    /**
+     * Returns a new <tt>CountingDedup</tt>-object, which can also return the count of
+     * each unique word, and the most frequent words.
+     * @see CountingDedup
+     */
+    static CountingDedup newCountingDedup() {
+        return new CountingDedup();
+    }
+
+    /**
+     * Returns a new <tt>Dedup</tt>-object that returns canonical instances of the unique
+     * words from a pool of <tt>Interner.DEFAULT_CAPACITY</tt> slots, so that output kept
+     * from many calls holds each word once.
+     * @see CanonicalDedup
+     */
+    static Dedup newCanonicalDedup() {
+        return newCanonicalDedup(new OpenAddressingDedup(), Interner.DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Returns a new <tt>Dedup</tt>-object that deduplicates with <tt>engine</tt>, and returns
+     * canonical instances from a pool of <tt>capacity</tt> slots.
+     * @see CanonicalDedup
+     */
+    static Dedup newCanonicalDedup(Dedup engine, int capacity) {
+        return new CanonicalDedup(engine, new Interner(capacity));
+    }
+
+    /**
+     * Returns a thread safe <tt>Dedup</tt>-object for many small batches, which
+     * recycles its hash tables between calls through a pool of engines.
+     * @see DedupPool
+     */
+    static Dedup newPooledDedup() {
+        return new DedupPool();
+    }
+
+    /**
+     * Returns a thread safe <tt>Dedup</tt>-object for many small batches, which keeps
+     * at most <tt>maxIdle</tt> idle engines.
+     * @see DedupPool
+     */
+    static Dedup newPooledDedup(int maxIdle) {
+        return new DedupPool(maxIdle);
+    }
+
+    /**
+     * Returns a <tt>Dedup</tt>-object that deduplicates with <tt>engine</tt>, and records
+     * calls, word counts, latencies, allocation and probe lengths, for JMX and periodic dumps.
+     * @see InstrumentedDedup
+     */
+    static InstrumentedDedup newInstrumentedDedup(Dedup engine) {
+        return new InstrumentedDedup(engine);
+    }
+
     /**
      * Very crude unit testing. Tests the code simply
      * by running <tt>DedupTest.main</tt>
@@ -121,6 +402,26 @@ public interface Dedup {
      * <tt>String[]</tt>-object<tt>words</tt>, but with the duplicates removed.
      */
     String[] dedup(String[] words);
+
+    /**
+     * Writes the unique words of <tt>in[from..to)</tt> to <tt>out[0..count)</tt>, and returns
+     * <tt>count</tt>. <tt>out</tt> must have room for <tt>to - from</tt> words, since some
+     * engines use it as scratch space.
+     *
+     * <tt>in</tt> is not modified, unless <tt>out</tt> is <tt>in</tt>, which deduplicates in
+     * place. The default implementation copies the range and calls <tt>dedup</tt>.
+     */
+    default int dedupInto(String[] in, int from, int to, String[] out) {
+        String[] unique = dedup(Arrays.copyOfRange(in, from, to));
+        System.arraycopy(unique, 0, out, 0, unique.length);
+        return unique.length;
+    }
+
+    /**
+     * Returns <tt>true</tt> if <tt>dedup</tt> may overwrite the array it is given,
+     * and <tt>false</tt> if it leaves it unchanged.
+     */
+    default boolean isInPlace() {return false;}
 }
 
 
@@ -154,6 +455,18 @@ class BasicDedup implements Dedup {
         return Arrays.copyOf(strings,count);
     }
 
+    public int dedupInto(String[] in, int from, int to, String[] out) {
+        int count = 0;
+        for (int i = from; i < to; i++) {
+            String current = in[i];
+            if (!isDuplicate(out, count, current))
+                out[count++] = current;
+        }
+        return count;
+    }
+
+    public boolean isInPlace() {return true;}
+
     private boolean isDuplicate(Object[] objects, int len, Object obj){
         for (int i = 0; i < len; i++) // inner loop
             if(obj.equals(objects[i]))
@@ -166,18 +479,31 @@ class BasicDedup implements Dedup {
 
 
 
+/**
+ * Sorts the words, so that duplicates end up next to each other.
+ * <tt>Arrays.sort</tt> allocates scratch space, so this is not allocation free.
+ */
 class SortDedup implements Dedup{
     public String[] dedup(String[] strings){
-        Arrays.sort(strings);
+        return Arrays.copyOf(strings, dedupInto(strings, 0, strings.length, strings));
+    }
+
+    public int dedupInto(String[] in, int from, int to, String[] out){
+        int n = to - from;
+        if (n == 0) return 0;
+        System.arraycopy(in, from, out, 0, n);
+        Arrays.sort(out, 0, n);
         int count = 1;
-        for(int i = 1; i < strings.length;i++){
-            if(strings[i].equals(strings[i-1]))
+        for(int i = 1; i < n;i++){
+            if(out[i].equals(out[i-1]))
                 continue;
             else 
-                strings[count++] = strings[i];
+                out[count++] = out[i];
         }
-        return Arrays.copyOf(strings,count);
+        return count;
     }
+
+    public boolean isInPlace() {return true;}
 }
 
 
@@ -187,7 +513,7 @@ abstract class CollectionDedup implements Dedup {
     CollectionDedup(Collection<String> theCollection){coll = theCollection;}
     
     public String[] dedup(String[] strings){
-        coll.clear();
+        reset(strings.length);
         for(String s : strings)add(s);
         
         String[] output = new String[coll.size()];
@@ -196,7 +522,21 @@ abstract class CollectionDedup implements Dedup {
         for(String str: coll) output[i++] = str;
         return output;
     }
+
+    public int dedupInto(String[] in, int from, int to, String[] out){
+        reset(to - from);
+        for(int i = from; i < to; i++) add(in[i]);
+
+        int count = 0;
+        for(String str: coll) out[count++] = str;
+        return count;
+    }
     protected abstract boolean add(String s);
+
+    /**
+     * Empties the collection before a batch of <tt>n</tt> words.
+     */
+    protected void reset(int n){coll.clear();}
 }
 
 class ListDedup extends CollectionDedup {
@@ -211,7 +551,34 @@ class SetDedup extends CollectionDedup {
 }
 
 class ArrayListDedup extends ListDedup {ArrayListDedup(){super(new ArrayList<String>());}}
-class HashSetDedup extends SetDedup {HashSetDedup(){super(new HashSet<String>());}}
+/**
+ * <tt>HashSet.clear</tt> costs O(capacity), and the capacity follows the largest batch
+ * ever seen. So once the set has held many times more words than the recent batches,
+ * it is replaced by a new one instead of cleared.
+ */
+class HashSetDedup extends SetDedup {
+    private final int expectedSize;
+    private final RecyclingDedup.BatchSizes sizes = new RecyclingDedup.BatchSizes();
+    private int peak;
+
+    HashSetDedup(){this(0);}
+    HashSetDedup(int expectedSize){super(newSet(expectedSize)); this.expectedSize = expectedSize;}
+
+    private static HashSet<String> newSet(int expectedSize){
+        return expectedSize > 0 ? new HashSet<String>((int) (expectedSize / 0.75f) + 1) : new HashSet<String>();
+    }
+
+    protected void reset(int n){
+        peak = Math.max(peak, coll.size());
+        int recent = Math.max(sizes.record(n), expectedSize);
+        if (sizes.isOversized(peak, recent)) {
+            coll = newSet(expectedSize);
+            peak = 0;
+        } else {
+            coll.clear();
+        }
+    }
+}
 class TreeSetDedup extends SetDedup {
     TreeSetDedup(){
     super(new TreeSet<String>());
@@ -0,0 +1,491 @@
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * A set of seen words kept on disk, so that deduplication against earlier runs survives
+ * restarts without rebuilding a set from scratch.
+ *
+ * A directory holds two files. <tt>words.log</tt> is an append-only log of the unique
+ * words, in segments of a header (magic, word count, payload length, CRC32 of the payload)
+ * and a payload of <tt>int</tt> lengths and UTF-8 bytes, as in the run files of
+ * <tt>ExternalSortDedup</tt>. <tt>words.idx</tt> is an open addressing hash table over the
+ * log, memory-mapped, with a slot of log offset, <tt>String</tt> hash and length per word,
+ * so reopening only reads a header. Candidates are compared against the log bytes, which
+ * are mapped as well, so lookups are exact.
+ *
+ * <tt>dedupAgainstIndex</tt> returns the words that are in neither the index nor the
+ * pending words of earlier calls, and adds them to the pending words. <tt>commit</tt>
+ * appends the pending words to the log as new segments, forces them to disk, and only
+ * then adds them to the index. The log is the source of truth:
+ * <ul>
+ * <li> a segment torn by a crash fails its checksum, and is cut off the log on reopening,</li>
+ * <li> the index header records how much of the log it covers, and the segments after
+ *      that are indexed on reopening,</li>
+ * <li> the header is marked dirty while slots are written, and marked clean only once the
+ *      slots are on disk; an index that is dirty or does not check out is rebuilt from the
+ *      log. Replaying a segment whose slots are already there adds none.</li>
+ * </ul>
+ * A larger index is written to a new file that replaces the old one atomically.
+ *
+ * Words must not be <tt>null</tt>, and strings with unpaired surrogates do not survive the
+ * trip through UTF-8. The index holds at most 2^25 words, and only the first 2 GB of the
+ * log are mapped; candidates beyond that are read with a system call. So that a commit
+ * rarely has to map the log anew, it is mapped with room to spare, and extended with a
+ * hole to match. The log is only cut back on reopening, before it is mapped, since some
+ * platforms cannot truncate a mapped file: the hole then ends the log like a torn
+ * segment. A directory can be open in one <tt>DedupIndex</tt> at a time, which is not
+ * thread safe.
+ */
+class DedupIndex implements AutoCloseable {
+    static final String LOG_FILE = "words.log";
+    static final String INDEX_FILE = "words.idx";
+
+    private static final int LOG_MAGIC = 0x44444C47;     // "DDLG"
+    private static final int SEGMENT_MAGIC = 0x5345474D; // "SEGM"
+    private static final int INDEX_MAGIC = 0x44444958;   // "DDIX"
+    private static final int VERSION = 1;
+    private static final int LOG_HEADER = 8;
+    private static final int SEGMENT_HEADER = 16;
+    private static final int INDEX_HEADER = 64;
+    private static final int SLOT = 16; // log offset, hash, length; an offset of 0 is empty
+    private static final int CLEAN = 1, DIRTY = 2;
+    private static final int INITIAL_CAPACITY = 1 << 10;
+    private static final int MAX_CAPACITY = 1 << 26;
+    private static final int MAX_SEGMENT = 1 << 24;
+    private static final int MIN_MAPPING = 1 << 20;
+
+    private final Path directory;
+    private final FileChannel log;
+    private long logLength;        // end of the last indexed segment
+    private MappedByteBuffer words; // the log, for comparing candidates
+    private FileChannel indexFile;
+    private MappedByteBuffer index;
+    private int capacity;
+    private int mask;
+    private int shift;
+    private int size;
+
+    private final StringTable pendingSet = new StringTable(16);
+    private final List<String> pending = new ArrayList<>();
+    private boolean closed;
+
+    /**
+     * Opens the index in <tt>directory</tt>, creating it if needed, and recovers from an
+     * earlier crash as described above.
+     */
+    static DedupIndex open(Path directory) throws IOException {
+        return new DedupIndex(directory);
+    }
+
+    private DedupIndex(Path directory) throws IOException {
+        this.directory = directory;
+        Files.createDirectories(directory);
+        log = FileChannel.open(directory.resolve(LOG_FILE),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            boolean locked;
+            try {
+                locked = log.tryLock() != null;
+            } catch (OverlappingFileLockException e) {
+                locked = false;
+            }
+            if (!locked) throw new IOException("index is in use: " + directory);
+            if (log.size() < LOG_HEADER) {
+                ByteBuffer header = ByteBuffer.allocate(LOG_HEADER);
+                header.putInt(LOG_MAGIC).putInt(VERSION).flip();
+                log.truncate(0);
+                writeFully(header, 0);
+                log.force(true);
+            } else {
+                ByteBuffer header = readFully(0, LOG_HEADER);
+                if (header.getInt() != LOG_MAGIC || header.getInt() != VERSION)
+                    throw new IOException("not a dedup log: " + directory.resolve(LOG_FILE));
+            }
+            long covered = openIndex();
+            if (covered < 0) {
+                size = 0;
+                logLength = LOG_HEADER;
+                replaceIndex(INITIAL_CAPACITY);
+            } else {
+                logLength = covered;
+            }
+            replay();
+        } catch (IOException | RuntimeException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the words of <tt>words</tt> that were never seen before, in first occurrence
+     * order, and remembers them until the next <tt>commit</tt>.
+     */
+    String[] dedupAgainstIndex(String[] words) {
+        checkOpen();
+        String[] unique = new String[words.length];
+        int count = 0;
+        for (String word : words) {
+            if (word == null) throw new NullPointerException("null word");
+            if (pendingSet.contains(word) || isIndexed(word)) continue;
+            pendingSet.add(word);
+            pending.add(word);
+            unique[count++] = word;
+        }
+        return Arrays.copyOf(unique, count);
+    }
+
+    /**
+     * Returns <tt>true</tt> if <tt>word</tt> is committed or pending.
+     */
+    boolean contains(String word) {
+        checkOpen();
+        return pendingSet.contains(word) || isIndexed(word);
+    }
+
+    /**
+     * Makes the pending words durable: appends them to the log, forces it to disk, and
+     * adds them to the index.
+     */
+    void commit() throws IOException {
+        checkOpen();
+        int n = pending.size();
+        if (n == 0) return;
+        if ((long) size + n > MAX_CAPACITY / 2)
+            throw new IllegalStateException("index is full: " + size + " + " + n + " words");
+        long[] offsets = new long[n];
+        int[] hashes = new int[n];
+        int[] lengths = new int[n];
+        long end = logLength;
+        try {
+            ByteArrayOutputStream payload = new ByteArrayOutputStream(1 << 16);
+            DataOutputStream out = new DataOutputStream(payload);
+            int first = 0;
+            for (int k = 0; k < n; k++) {
+                byte[] bytes = pending.get(k).getBytes(StandardCharsets.UTF_8);
+                if (k > first && payload.size() + 4 + bytes.length > MAX_SEGMENT) {
+                    end = appendSegment(payload, k - first, end);
+                    first = k;
+                }
+                offsets[k] = end + SEGMENT_HEADER + payload.size() + 4;
+                hashes[k] = pending.get(k).hashCode();
+                lengths[k] = bytes.length;
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+            end = appendSegment(payload, n - first, end);
+            log.force(true);
+        } catch (IOException e) {
+            // Blank the first new segment, so that reopening does not replay words of a
+            // commit that failed; a retry writes the same segments over it
+            try {
+                writeFully(ByteBuffer.allocate(SEGMENT_HEADER), logLength);
+            } catch (IOException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw e;
+        }
+        mapWordsWithRoom(end);
+        add(offsets, hashes, lengths, n, end);
+        pending.clear();
+        pendingSet.clear();
+    }
+
+    /**
+     * Returns the number of committed words.
+     */
+    int size() {return size;}
+
+    /**
+     * Returns the number of words that are waiting for <tt>commit</tt>.
+     */
+    int pendingSize() {return pending.size();}
+
+    /**
+     * Closes the files. Pending words are dropped, as if the process had stopped.
+     */
+    public void close() throws IOException {
+        closed = true;
+        words = null;
+        index = null;
+        try {
+            if (indexFile != null) indexFile.close();
+        } finally {
+            log.close();
+        }
+    }
+
+    private void checkOpen() {
+        if (closed) throw new IllegalStateException("index is closed");
+    }
+
+    /*
+     * The log
+     */
+
+    /**
+     * Writes a segment of <tt>count</tt> words from <tt>payload</tt> at <tt>position</tt>,
+     * empties <tt>payload</tt>, and returns the end of the segment.
+     */
+    private long appendSegment(ByteArrayOutputStream payload, int count, long position) throws IOException {
+        byte[] bytes = payload.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length);
+        ByteBuffer header = ByteBuffer.allocate(SEGMENT_HEADER);
+        header.putInt(SEGMENT_MAGIC).putInt(count).putInt(bytes.length).putInt((int) crc.getValue()).flip();
+        writeFully(header, position);
+        writeFully(ByteBuffer.wrap(bytes), position + SEGMENT_HEADER);
+        payload.reset();
+        return position + SEGMENT_HEADER + bytes.length;
+    }
+
+    /**
+     * Indexes the segments after <tt>logLength</tt>, cuts the log off at the first segment
+     * that is torn or fails its checksum, and only then maps it.
+     */
+    private void replay() throws IOException {
+        long fileSize = log.size();
+        long position = logLength;
+        while (position + SEGMENT_HEADER <= fileSize) {
+            ByteBuffer header = readFully(position, SEGMENT_HEADER);
+            int magic = header.getInt(), count = header.getInt(), length = header.getInt(), checksum = header.getInt();
+            if (magic != SEGMENT_MAGIC || count < 0 || length < 0 || position + SEGMENT_HEADER + length > fileSize) break;
+            byte[] payload = readFully(position + SEGMENT_HEADER, length).array();
+            CRC32 crc = new CRC32();
+            crc.update(payload, 0, length);
+            if ((int) crc.getValue() != checksum) break;
+            long[] offsets = new long[count];
+            int[] hashes = new int[count];
+            int[] lengths = new int[count];
+            ByteBuffer in = ByteBuffer.wrap(payload);
+            int k = 0;
+            for (; k < count && in.remaining() >= 4; k++) {
+                int n = in.getInt();
+                if (n < 0 || n > in.remaining()) break;
+                offsets[k] = position + SEGMENT_HEADER + in.position();
+                hashes[k] = new String(payload, in.position(), n, StandardCharsets.UTF_8).hashCode();
+                lengths[k] = n;
+                in.position(in.position() + n);
+            }
+            if (k < count || in.hasRemaining()) break;
+            if ((long) size + count > MAX_CAPACITY / 2) throw new IOException("log holds too many words for the index");
+            position += SEGMENT_HEADER + length;
+            add(offsets, hashes, lengths, count, position);
+        }
+        if (position < fileSize) {
+            log.truncate(position);
+            log.force(true);
+        }
+        mapWords(position);
+    }
+
+    private void mapWords(long length) throws IOException {
+        words = log.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(length, Integer.MAX_VALUE));
+    }
+
+    /**
+     * Maps the log up to at least <tt>end</tt>, unless it already is. A new mapping is twice
+     * as long as needed, and the file is extended with a hole to cover it, so that the
+     * commits after this one fit in the same mapping.
+     */
+    private void mapWordsWithRoom(long end) throws IOException {
+        if (end <= words.limit() || words.limit() == Integer.MAX_VALUE) return;
+        long length = Math.min(Integer.MAX_VALUE, Math.max(MIN_MAPPING, 2 * end));
+        if (log.size() < length) writeFully(ByteBuffer.allocate(1), length - 1);
+        mapWords(length);
+    }
+
+    private void writeFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) position += log.write(buffer, position);
+    }
+
+    private ByteBuffer readFully(long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining())
+            if (log.read(buffer, position + buffer.position()) < 0) throw new java.io.EOFException();
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Returns <tt>true</tt> if the <tt>length</tt> bytes at <tt>offset</tt> in the log are
+     * the UTF-8 encoding of <tt>word</tt>.
+     */
+    private boolean matches(String word, long offset, int length) {
+        int n = word.length();
+        if (length < n || length > 3 * n) return false;
+        if (offset + length <= words.limit()) {
+            int o = (int) offset;
+            for (int k = 0; k < length; k++) {
+                byte b = words.get(o + k);
+                if (b < 0) return decode(offset, length).equals(word); // not ASCII
+                if (k >= n || word.charAt(k) != b) return false;
+            }
+            return length == n;
+        }
+        return decode(offset, length).equals(word);
+    }
+
+    private String decode(long offset, int length) {
+        byte[] bytes = new byte[length];
+        if (offset + length <= words.limit()) {
+            ByteBuffer view = words.duplicate();
+            view.position((int) offset);
+            view.get(bytes);
+        } else {
+            try {
+                readFully(offset, length).get(bytes);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /*
+     * The index
+     */
+
+    /**
+     * Maps the index file if it is clean and agrees with the log. Returns the length of
+     * the log that it covers, or -1 if it has to be rebuilt.
+     */
+    private long openIndex() throws IOException {
+        Path path = directory.resolve(INDEX_FILE);
+        if (!Files.exists(path)) return -1;
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        ByteBuffer header = ByteBuffer.allocate(INDEX_HEADER);
+        while (header.hasRemaining() && channel.read(header) >= 0) {}
+        header.flip();
+        long covered = -1;
+        if (header.remaining() == INDEX_HEADER && header.getInt(0) == INDEX_MAGIC && header.getInt(4) == VERSION
+                && header.getInt(8) == CLEAN && header.getInt(32) == checksum(header)) {
+            int slots = header.getInt(12);
+            long words = header.getLong(16), length = header.getLong(24);
+            if (slots >= INITIAL_CAPACITY && slots <= MAX_CAPACITY && Integer.bitCount(slots) == 1
+                    && channel.size() == INDEX_HEADER + (long) slots * SLOT
+                    && words >= 0 && words <= slots / 2 && length >= LOG_HEADER && length <= log.size())
+                covered = length;
+            if (covered >= 0) {
+                indexFile = channel;
+                index = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+                setCapacity(slots);
+                size = (int) words;
+                return covered;
+            }
+        }
+        channel.close();
+        return -1;
+    }
+
+    /**
+     * Adds <tt>n</tt> words to the index, which then covers the log up to <tt>end</tt>.
+     */
+    private void add(long[] offsets, int[] hashes, int[] lengths, int n, long end) throws IOException {
+        int needed = capacity;
+        while (size + n > needed / 2) needed <<= 1;
+        if (needed > capacity) replaceIndex(needed);
+        writeHeader(DIRTY);
+        for (int k = 0; k < n; k++) put(offsets[k], hashes[k], lengths[k]);
+        size += n;
+        logLength = end;
+        writeHeader(CLEAN);
+    }
+
+    private boolean isIndexed(String word) {
+        int h = word.hashCode();
+        for (int i = slotOf(h); ; i = (i + 1) & mask) {
+            int p = INDEX_HEADER + i * SLOT;
+            long offset = index.getLong(p);
+            if (offset == 0) return false;
+            if (index.getInt(p + 8) == h && matches(word, offset, index.getInt(p + 12))) return true;
+        }
+    }
+
+    /**
+     * Adds a slot for the word at <tt>offset</tt>, unless there already is one, which a
+     * replayed segment may have if its slots reached the disk but its header did not.
+     */
+    private void put(long offset, int h, int length) {
+        int i = slotOf(h);
+        for (long o; (o = index.getLong(INDEX_HEADER + i * SLOT)) != 0; i = (i + 1) & mask)
+            if (o == offset) return;
+        int p = INDEX_HEADER + i * SLOT;
+        index.putLong(p, offset).putInt(p + 8, h).putInt(p + 12, length);
+    }
+
+    private int slotOf(int h) {
+        return (h * 0x9E3779B9) >>> shift;
+    }
+
+    private void setCapacity(int slots) {
+        capacity = slots;
+        mask = slots - 1;
+        shift = Integer.numberOfLeadingZeros(slots) + 1;
+    }
+
+    /**
+     * Writes the current slots to a new index file of <tt>slots</tt> slots, which then
+     * atomically replaces the old one.
+     */
+    private void replaceIndex(int slots) throws IOException {
+        Path path = directory.resolve(INDEX_FILE), temp = directory.resolve(INDEX_FILE + ".tmp");
+        FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        MappedByteBuffer old = index;
+        FileChannel oldFile = indexFile;
+        int oldCapacity = capacity;
+        index = channel.map(FileChannel.MapMode.READ_WRITE, 0, INDEX_HEADER + (long) slots * SLOT);
+        indexFile = channel;
+        setCapacity(slots);
+        if (old != null)
+            for (int i = 0; i < oldCapacity; i++) {
+                int p = INDEX_HEADER + i * SLOT;
+                long offset = old.getLong(p);
+                if (offset != 0) put(offset, old.getInt(p + 8), old.getInt(p + 12));
+            }
+        writeHeader(CLEAN);
+        Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        try (FileChannel dir = FileChannel.open(directory, StandardOpenOption.READ)) {
+            dir.force(true);
+        } catch (IOException e) {
+            // not every platform can force a directory; the rename is still atomic
+        }
+        if (oldFile != null) oldFile.close();
+    }
+
+    /**
+     * Writes the header and forces the index to disk. A clean header is written only once
+     * the slots are on disk, since the pages of one <tt>force</tt> may reach the disk in any
+     * order.
+     */
+    private void writeHeader(int state) {
+        if (state == CLEAN) index.force();
+        index.putInt(0, INDEX_MAGIC).putInt(4, VERSION).putInt(8, state).putInt(12, capacity)
+                .putLong(16, size).putLong(24, logLength);
+        index.putInt(32, checksum(index));
+        index.force();
+    }
+
+    private static int checksum(ByteBuffer header) {
+        ByteBuffer fields = header.duplicate();
+        fields.position(0).limit(32);
+        CRC32 crc = new CRC32();
+        crc.update(fields);
+        return (int) crc.getValue();
+    }
+}
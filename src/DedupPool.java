@@ -0,0 +1,81 @@
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A pool of <tt>RecyclingDedup</tt> engines, for services that deduplicate many small
+ * batches from many threads.
+ *
+ * Engines can be borrowed and released explicitly, or taken from a per-thread slot with
+ * <tt>local()</tt>. Borrowing and releasing are thread safe; the engine itself must only be
+ * used by the thread that borrowed it, until it is released. Released engines are handed
+ * out last in, first out, so the warmest tables are reused first, and at most
+ * <tt>maxIdle</tt> idle engines are kept.
+ *
+ * The pool is itself a thread safe <tt>Dedup</tt>, which borrows an engine for each call.
+ */
+class DedupPool implements Dedup {
+    /** Default number of idle engines kept. */
+    static final int DEFAULT_MAX_IDLE = 2 * Runtime.getRuntime().availableProcessors();
+
+    private final ConcurrentLinkedDeque<RecyclingDedup> idle = new ConcurrentLinkedDeque<>();
+    private final AtomicInteger idleCount = new AtomicInteger();
+    private final ThreadLocal<RecyclingDedup> local = ThreadLocal.withInitial(RecyclingDedup::new);
+    private final int maxIdle;
+
+    DedupPool() {this(DEFAULT_MAX_IDLE);}
+
+    DedupPool(int maxIdle) {
+        if (maxIdle < 0) throw new IllegalArgumentException("maxIdle must not be negative: " + maxIdle);
+        this.maxIdle = maxIdle;
+    }
+
+    /**
+     * Returns an idle engine, or a new one if there is none. Give it back with <tt>release</tt>.
+     */
+    RecyclingDedup borrow() {
+        RecyclingDedup dedup = idle.pollFirst();
+        if (dedup == null) return new RecyclingDedup();
+        idleCount.decrementAndGet();
+        return dedup;
+    }
+
+    /**
+     * Returns <tt>dedup</tt> to the pool. It is dropped if the pool already holds
+     * <tt>maxIdle</tt> idle engines.
+     */
+    void release(RecyclingDedup dedup) {
+        if (idleCount.incrementAndGet() <= maxIdle) idle.offerFirst(dedup);
+        else idleCount.decrementAndGet();
+    }
+
+    /**
+     * Returns the engine of the calling thread. It must not be passed to other threads,
+     * nor released.
+     */
+    RecyclingDedup local() {return local.get();}
+
+    /**
+     * Returns the number of idle engines in the pool.
+     */
+    int idle() {return idleCount.get();}
+
+    public String[] dedup(String[] strings) {
+        RecyclingDedup dedup = borrow();
+        try {
+            return dedup.dedup(strings);
+        } finally {
+            release(dedup);
+        }
+    }
+
+    public int dedupInto(String[] in, int from, int to, String[] out) {
+        RecyclingDedup dedup = borrow();
+        try {
+            return dedup.dedupInto(in, from, to, out);
+        } finally {
+            release(dedup);
+        }
+    }
+
+    public boolean isInPlace() {return true;}
+}
@@ -0,0 +1,265 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * In-process deduplication service: clients submit batches from any thread, and get
+ * the unique words of each batch back as a <tt>CompletableFuture</tt>.
+ *
+ * Submissions go through a bounded queue. <tt>submit</tt> blocks while the queue is full,
+ * which pushes back on clients that submit faster than the batches are deduplicated, and
+ * <tt>offer</tt> fails at once instead. A dispatcher thread takes the requests off the queue
+ * and coalesces small ones that are waiting next to each other into one task of at most
+ * <tt>coalesceWords</tt> words, so that a stream of tiny batches does not cost one task
+ * each. Each batch is still deduplicated on its own. At most <tt>maxInFlight</tt> tasks run
+ * at once, so that the queue fills up rather than the executor's.
+ *
+ * The tasks run on virtual threads when the runtime has them (Java 21 and later), and on
+ * a fixed pool of platform threads otherwise, or on an executor given by the caller.
+ * A request that is not done within its timeout fails with a <tt>TimeoutException</tt>,
+ * and is skipped if it has not started yet.
+ *
+ * The default engine is <tt>Dedup.newPooledDedup()</tt>; any thread safe <tt>Dedup</tt> will do.
+ */
+class DedupService implements AutoCloseable {
+    /** Default capacity of the submission queue, in requests. */
+    static final int DEFAULT_QUEUE_CAPACITY = 1024;
+    /** Default size of a coalesced task, in words. */
+    static final int DEFAULT_COALESCE_WORDS = 4096;
+
+    private static final Request CLOSE = new Request(new String[0]);
+
+    private final Dedup engine;
+    private final ExecutorService executor;
+    private final boolean ownsExecutor;
+    private final boolean virtualThreads;
+    private final ArrayBlockingQueue<Request> queue;
+    private final int coalesceWords;
+    private final long timeoutNanos;
+    private final int maxInFlight;
+    private final Semaphore inFlight;
+    private final ScheduledThreadPoolExecutor timer;
+    private final Thread dispatcher;
+    private volatile boolean closed;
+
+    /** A submitted batch and its result. */
+    private static final class Request {
+        final String[] batch;
+        final CompletableFuture<String[]> result = new CompletableFuture<>();
+
+        Request(String[] batch) {this.batch = batch;}
+    }
+
+    /**
+     * Constructs a service with the default engine, queue capacity and coalescing,
+     * no timeout, running on virtual threads if available.
+     */
+    DedupService() {
+        this(Dedup.newPooledDedup(), null, DEFAULT_QUEUE_CAPACITY, DEFAULT_COALESCE_WORDS, 0);
+    }
+
+    /**
+     * Constructs a service.
+     *
+     * @param engine         thread safe engine that deduplicates each batch
+     * @param executor       runs the tasks; if <tt>null</tt>, virtual threads or a platform pool
+     *                       owned by the service
+     * @param queueCapacity  number of requests that may wait before <tt>submit</tt> blocks
+     * @param coalesceWords  largest number of words in a coalesced task; 0 turns coalescing off
+     * @param timeoutMillis  default timeout of a request; 0 for none
+     */
+    DedupService(Dedup engine, ExecutorService executor, int queueCapacity, int coalesceWords, long timeoutMillis) {
+        if (queueCapacity < 1) throw new IllegalArgumentException("queueCapacity must be positive: " + queueCapacity);
+        int cpus = Runtime.getRuntime().availableProcessors();
+        ExecutorService virtual = executor == null ? newVirtualThreadExecutor() : null;
+        this.engine = engine;
+        this.virtualThreads = virtual != null;
+        this.ownsExecutor = executor == null;
+        this.executor = executor != null ? executor : virtual != null ? virtual : Executors.newFixedThreadPool(cpus, daemon("dedup-service-worker"));
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.coalesceWords = coalesceWords;
+        this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        this.maxInFlight = 2 * cpus;
+        this.inFlight = new Semaphore(maxInFlight);
+        this.timer = new ScheduledThreadPoolExecutor(1, daemon("dedup-service-timer"));
+        this.timer.setRemoveOnCancelPolicy(true);
+        this.dispatcher = daemon("dedup-service-dispatcher").newThread(this::dispatch);
+        this.dispatcher.start();
+    }
+
+    /**
+     * Returns an executor that starts a virtual thread per task, or <tt>null</tt> if the
+     * runtime does not have virtual threads. Looked up reflectively, so that the code
+     * still compiles and runs on Java 8.
+     */
+    static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Submits a batch with the default timeout, waiting for room in the queue if it is full.
+     */
+    CompletableFuture<String[]> submit(String[] batch) {
+        return enqueue(batch, timeoutNanos, true);
+    }
+
+    /**
+     * Submits a batch that fails with a <tt>TimeoutException</tt> unless it is done within
+     * <tt>timeout</tt>, counted from now and including the wait for room in the queue.
+     */
+    CompletableFuture<String[]> submit(String[] batch, long timeout, TimeUnit unit) {
+        return enqueue(batch, unit.toNanos(timeout), true);
+    }
+
+    /**
+     * Submits a batch with the default timeout, without waiting. The result fails with a
+     * <tt>RejectedExecutionException</tt> if the queue is full.
+     */
+    CompletableFuture<String[]> offer(String[] batch) {
+        return enqueue(batch, timeoutNanos, false);
+    }
+
+    /**
+     * Returns <tt>true</tt> if the tasks run on virtual threads.
+     */
+    boolean usesVirtualThreads() {return virtualThreads;}
+
+    /**
+     * Returns the number of requests waiting in the queue.
+     */
+    int queued() {return queue.size();}
+
+    private CompletableFuture<String[]> enqueue(String[] batch, long timeoutNanos, boolean block) {
+        Request request = new Request(batch);
+        if (closed) {
+            request.result.completeExceptionally(new RejectedExecutionException("DedupService is closed"));
+            return request.result;
+        }
+        try {
+            if (timeoutNanos > 0) {
+                ScheduledFuture<?> timeout = timer.schedule(() -> request.result.completeExceptionally(
+                        new TimeoutException("dedup of " + batch.length + " words timed out")), timeoutNanos, TimeUnit.NANOSECONDS);
+                request.result.whenComplete((words, e) -> timeout.cancel(false));
+            }
+            boolean queued;
+            if (!block) queued = queue.offer(request);
+            else if (timeoutNanos > 0) queued = queue.offer(request, timeoutNanos, TimeUnit.NANOSECONDS);
+            else {
+                queue.put(request);
+                queued = true;
+            }
+            if (!queued && !request.result.isDone())
+                request.result.completeExceptionally(new RejectedExecutionException("DedupService queue is full"));
+            if (queued && closed && queue.remove(request)) // raced with close
+                request.result.completeExceptionally(new RejectedExecutionException("DedupService is closed"));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            request.result.completeExceptionally(e);
+        } catch (RejectedExecutionException e) { // timer shut down by close
+            request.result.completeExceptionally(e);
+        }
+        return request.result;
+    }
+
+    /**
+     * Takes requests off the queue, and hands them to the executor, coalescing
+     * small ones, until the service is closed.
+     */
+    private void dispatch() {
+        List<Request> group = new ArrayList<>();
+        try {
+            for (Request first; (first = queue.take()) != CLOSE; ) {
+                inFlight.acquire();
+                group.add(first);
+                int words = first.batch.length;
+                for (Request next; (next = queue.peek()) != null && next != CLOSE
+                        && words + next.batch.length <= coalesceWords; words += next.batch.length)
+                    group.add(queue.poll());
+                Request[] task = group.toArray(new Request[0]);
+                group.clear();
+                try {
+                    executor.execute(() -> run(task));
+                } catch (RejectedExecutionException e) {
+                    inFlight.release();
+                    for (Request request : task) request.result.completeExceptionally(e);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        RejectedExecutionException closed = new RejectedExecutionException("DedupService is closed");
+        for (Request request; (request = queue.poll()) != null; )
+            request.result.completeExceptionally(closed);
+    }
+
+    private void run(Request[] task) {
+        try {
+            for (Request request : task) {
+                if (request.result.isDone()) continue; // timed out or cancelled while queued
+                try {
+                    String[] batch = request.batch;
+                    String[] out = new String[batch.length];
+                    int count = engine.dedupInto(batch, 0, batch.length, out);
+                    request.result.complete(count == out.length ? out : Arrays.copyOf(out, count));
+                } catch (Throwable e) {
+                    request.result.completeExceptionally(e);
+                }
+            }
+        } finally {
+            inFlight.release();
+        }
+    }
+
+    /**
+     * Stops accepting requests, waits for the queued and running ones to finish, and
+     * shuts down the threads of the service. An executor given by the caller is left running.
+     */
+    public void close() {
+        if (closed) return;
+        closed = true;
+        boolean interrupted = false;
+        while (true) {
+            try {
+                queue.put(CLOSE);
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        while (dispatcher.isAlive()) {
+            try {
+                dispatcher.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        inFlight.acquireUninterruptibly(maxInFlight); // wait for running tasks
+        inFlight.release(maxInFlight);
+        if (ownsExecutor) executor.shutdown();
+        timer.shutdownNow();
+        if (interrupted) Thread.currentThread().interrupt();
+    }
+
+    private static ThreadFactory daemon(String name) {
+        return runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -11,8 +11,9 @@ public class DedupTest {
     private static final Dedup aDedup = Dedup.newArrayListDedup();
     private static final Dedup bDedup = Dedup.newBasicDedup();
     private static final Dedup sDedup = Dedup.newSortDedup();
+    private static final Dedup oDedup = Dedup.newOpenAddressingDedup();
 
-    private static final Dedup[] dedups = new Dedup[]{hDedup,aDedup,bDedup,tDedup,sDedup};
+    private static final Dedup[] dedups = new Dedup[]{hDedup,aDedup,bDedup,tDedup,sDedup,oDedup};
 
     private Utils.Sampler sampler;
     private Utils.Stopwatch timer;
@@ -70,6 +71,28 @@ public class DedupTest {
      */
     public void run(){
         System.out.printf("Start of %s%n",this);
+        testBloomDedup();
+        testDedupService();
+        testWindowedDedup();
+        testCountingDedup();
+        testOrderedDedup();
+        testDedupIndex();
+        testFrontCodedWords();
+        testInstrumentedDedup();
+        testParallelDedup();
+        testAdaptiveDedup();
+        testInterner();
+        testRadixSortDedup();
+        testConcurrentDedupSet();
+        testSwissDedup();
+        testTokenFile();
+        testStreamingDedup();
+        testExternalSortDedup();
+        testByteDedup();
+        testNumericDedup();
+        testHyperLogLog();
+        testWorkload();
+        testRecyclingDedup();
         /* Hente et utvalg av ord */
         String[] words = sampler.get(100);
         /* Skrive ut ord */
@@ -95,6 +118,920 @@ public class DedupTest {
        System.out.printf("End of %s%n",this);
     }
     
+    /**
+     * Checks the false positive rate of <tt>BloomDedup</tt> against its target:
+     * fills the filter with the expected number of unique words, then counts how many
+     * words it has not seen are reported as seen.
+     */
+    public static void testBloomDedup(){
+        int n = 100000;
+        for (double fpp : new double[]{0.1, 0.01, 0.001}) {
+            BloomDedup bloom = new BloomDedup(n, fpp);
+            String[] words = new String[n];
+            for (int i = 0; i < n; i++) words[i] = "word" + i;
+            if (bloom.dedup(words).length < n * (1 - fpp))
+                throw new AssertionError("BloomDedup dropped too many unique words");
+
+            int falsePositives = 0;
+            for (int i = n; i < 2 * n; i++)
+                if (bloom.mightContain("word" + i)) falsePositives++;
+            double observed = (double) falsePositives / n;
+            System.out.printf("BloomDedup: target %.4f, observed %.4f, estimated %.4f, %d bytes%n",
+                    fpp, observed, bloom.estimatedFpp(), bloom.memoryBytes());
+            if (observed > 1.5 * fpp + 0.0005)
+                throw new AssertionError("BloomDedup false positive rate " + observed + " above target " + fpp);
+        }
+    }
+
+    /**
+     * Runs <tt>DedupService</tt> with in-process clients: checks the results of many
+     * concurrent small batches, that a slow request times out, and that <tt>offer</tt>
+     * is rejected when the queue is full.
+     */
+    public static void testDedupService(){
+        try (DedupService service = new DedupService()) {
+            java.util.List<java.util.concurrent.CompletableFuture<String[]>> results = new java.util.ArrayList<>();
+            java.util.List<String[]> batches = new java.util.ArrayList<>();
+            java.util.Random random = new java.util.Random(17);
+            for (int i = 0; i < 2000; i++) {
+                String[] batch = new String[random.nextInt(50)];
+                for (int j = 0; j < batch.length; j++) batch[j] = "w" + random.nextInt(20);
+                batches.add(batch);
+                results.add(service.submit(batch));
+            }
+            for (int i = 0; i < batches.size(); i++) {
+                java.util.List<String> expected = new java.util.ArrayList<>(new java.util.LinkedHashSet<>(java.util.Arrays.asList(batches.get(i))));
+                if (!expected.equals(java.util.Arrays.asList(results.get(i).join())))
+                    throw new AssertionError("DedupService gave a wrong result for batch " + i);
+            }
+            System.out.printf("DedupService: %d batches, virtual threads: %b%n", batches.size(), service.usesVirtualThreads());
+        }
+
+        Dedup slow = words -> {
+            try {
+                Thread.sleep(200);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return Dedup.openAddressingDedup(words);
+        };
+        try (DedupService service = new DedupService(slow, null, 1, 0, 0)) {
+            java.util.concurrent.CompletableFuture<String[]> late = service.submit(new String[]{"a", "a"}, 20, java.util.concurrent.TimeUnit.MILLISECONDS);
+            try {
+                late.join();
+                throw new AssertionError("DedupService did not time out");
+            } catch (java.util.concurrent.CompletionException e) {
+                if (!(e.getCause() instanceof java.util.concurrent.TimeoutException))
+                    throw new AssertionError("DedupService failed with " + e.getCause());
+            }
+            int rejected = 0;
+            for (int i = 0; i < 4 * Runtime.getRuntime().availableProcessors() + 4; i++)
+                if (service.offer(new String[]{"b"}).isCompletedExceptionally()) rejected++;
+            if (rejected == 0)
+                throw new AssertionError("DedupService did not push back on a full queue");
+        }
+
+        // Requests that race with close are either done or rejected, never left waiting
+        for (int round = 0; round < 200; round++) {
+            DedupService service = new DedupService();
+            java.util.List<java.util.concurrent.CompletableFuture<String[]>> results = new java.util.concurrent.CopyOnWriteArrayList<>();
+            Thread client = new Thread(() -> {
+                java.util.concurrent.CompletableFuture<String[]> result;
+                do results.add(result = service.submit(new String[]{"a", "b", "a"}));
+                while (!result.isCompletedExceptionally());
+            });
+            client.start();
+            service.close();
+            try {
+                client.join();
+                for (java.util.concurrent.CompletableFuture<String[]> result : results)
+                    try {
+                        result.get(5, java.util.concurrent.TimeUnit.SECONDS);
+                    } catch (java.util.concurrent.ExecutionException e) {
+                        if (!(e.getCause() instanceof java.util.concurrent.RejectedExecutionException))
+                            throw new AssertionError("DedupService failed with " + e.getCause());
+                    }
+            } catch (java.util.concurrent.TimeoutException e) {
+                throw new AssertionError("DedupService left a request waiting after close");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Checks the eviction of <tt>WindowedDedup</tt> against a naive scan of the last words,
+     * and the bucket rotation of <tt>TimeWindowedDedup</tt> with a fake clock.
+     */
+    public static void testWindowedDedup(){
+        java.util.Random random = new java.util.Random(18);
+        for (int window : new int[]{1, 2, 7, 100}) {
+            WindowedDedup dedup = new WindowedDedup(window, word -> {});
+            java.util.ArrayDeque<String> last = new java.util.ArrayDeque<>();
+            for (int i = 0; i < 100000; i++) {
+                String word = "w" + random.nextInt(3 * window);
+                boolean expected = !last.contains(word);
+                if (dedup.accept(word) != expected)
+                    throw new AssertionError("WindowedDedup(" + window + ") wrong at word " + i);
+                last.addLast(word);
+                if (last.size() > window) last.removeFirst();
+                if (dedup.size() != new HashSet<>(last).size())
+                    throw new AssertionError("WindowedDedup(" + window + ") kept " + dedup.size() + " words");
+            }
+        }
+
+        long[] now = {0};
+        TimeWindowedDedup timed = new TimeWindowedDedup(1000, 4, 1 << 20, () -> now[0], word -> {});
+        if (!timed.accept("a")) throw new AssertionError("first word suppressed");
+        now[0] = 700;
+        if (timed.accept("a")) throw new AssertionError("duplicate within the window passed");
+        now[0] = 1400; // 700 after the last "a", within window - window / buckets
+        if (timed.accept("a")) throw new AssertionError("refreshed duplicate passed");
+        if (!timed.accept("b")) throw new AssertionError("new word suppressed");
+        now[0] = 2700; // more than a window after the last "a" and "b"
+        if (!timed.accept("a") || !timed.accept("b")) throw new AssertionError("expired word suppressed");
+        now[0] = 100000;
+        if (!timed.accept("a") || timed.size() != 1) throw new AssertionError("window not cleared after a gap");
+
+        TimeWindowedDedup capped = new TimeWindowedDedup(1000, 4, 40, () -> 0, word -> {});
+        for (int i = 0; i < 1000; i++) capped.accept("c" + i);
+        if (capped.size() > 40) throw new AssertionError("TimeWindowedDedup kept " + capped.size() + " words");
+    }
+
+    /**
+     * Checks the counts and top-k of <tt>CountingDedup</tt> against a <tt>HashMap</tt>, and
+     * that <tt>SpaceSaving</tt> finds the words of a skewed stream that occur more than
+     * <tt>n / capacity</tt> times.
+     */
+    public static void testCountingDedup(){
+        String[] words = new Workload().size(200000).cardinality(5000).skew(Workload.Skew.ZIPF).generate();
+        java.util.Map<String, Integer> expected = new java.util.HashMap<>();
+        for (String w : words) expected.merge(w, 1, Integer::sum);
+
+        CountingDedup.Counts counts = Dedup.count(words);
+        if (counts.size() != expected.size() || counts.total() != words.length)
+            throw new AssertionError("CountingDedup found " + counts.size() + " words");
+        for (int i = 0; i < counts.size(); i++)
+            if (counts.count(i) != expected.get(counts.word(i)))
+                throw new AssertionError("CountingDedup miscounted " + counts.word(i));
+
+        CountingDedup counter = new CountingDedup();
+        counter.count(words);
+        String[] small = {"pear", null, "apple", "pear", "fig", null, "apple", "pear"};
+        CountingDedup.Counts alphabetical = counter.count(small).sorted();
+        if (!java.util.Arrays.asList(null, "apple", "fig", "pear").equals(java.util.Arrays.asList(alphabetical.words()))
+                || alphabetical.count(0) != 2 || alphabetical.count(1) != 2 || alphabetical.count(2) != 1 || alphabetical.count(3) != 3)
+            throw new AssertionError("CountingDedup after a large call sorted " + alphabetical);
+
+        CountingDedup.Counts top = counts.top(10);
+        java.util.List<Integer> sorted = new java.util.ArrayList<>(expected.values());
+        sorted.sort(java.util.Collections.reverseOrder());
+        for (int i = 0; i < top.size(); i++)
+            if (top.count(i) != sorted.get(i))
+                throw new AssertionError("CountingDedup top " + i + " is " + top.count(i) + ", expected " + sorted.get(i));
+
+        int capacity = 100;
+        CountingDedup.SpaceSaving heavy = new CountingDedup.SpaceSaving(capacity);
+        for (String w : words) heavy.offer(w);
+        for (java.util.Map.Entry<String, Integer> e : expected.entrySet()) {
+            int estimate = heavy.estimate(e.getKey());
+            if (e.getValue() > words.length / capacity && estimate == 0)
+                throw new AssertionError("SpaceSaving lost heavy hitter " + e.getKey());
+            if (estimate != 0 && (estimate < e.getValue() || estimate - heavy.error(e.getKey()) > e.getValue()))
+                throw new AssertionError("SpaceSaving estimate " + estimate + " out of bounds for " + e.getValue());
+        }
+        System.out.println("CountingDedup top 5: " + counts.top(5) + ", SpaceSaving: " + heavy.top(5));
+    }
+
+    /**
+     * Checks that <tt>OrderedDedup</tt> gives exactly the output of <tt>ArrayListDedup</tt>,
+     * and that the keep-last variant gives the reverse of deduplicating the reversed input.
+     */
+    public static void testOrderedDedup(){
+        java.util.Random random = new java.util.Random(21);
+        Dedup first = Dedup.newOrderedDedup(), last = Dedup.newKeepLastDedup();
+        for (int n = 0; n < 2000; n += 1 + n / 4) {
+            String[] words = new String[n];
+            for (int i = 0; i < n; i++) words[i] = random.nextInt(10) == 0 ? null : "w" + random.nextInt(n / 2 + 1);
+            if (!java.util.Arrays.equals(Dedup.newArrayListDedup().dedup(words.clone()), first.dedup(words.clone())))
+                throw new AssertionError("OrderedDedup differs from ArrayListDedup at size " + n);
+            java.util.List<String> reversed = new java.util.ArrayList<>(java.util.Arrays.asList(words));
+            java.util.Collections.reverse(reversed);
+            java.util.List<String> expected = java.util.Arrays.asList(Dedup.newArrayListDedup().dedup(reversed.toArray(new String[0])));
+            java.util.Collections.reverse(expected);
+            if (!expected.equals(java.util.Arrays.asList(last.dedup(words.clone()))))
+                throw new AssertionError("keep-last OrderedDedup wrong at size " + n);
+        }
+    }
+
+    /**
+     * Checks that every path of <tt>AdaptiveDedup</tt> gives the output of
+     * <tt>OrderedDedup</tt>, and that tiny input with <tt>null</tt> avoids <tt>BasicDedup</tt>.
+     */
+    public static void testAdaptiveDedup(){
+        AdaptiveDedup adaptive = new AdaptiveDedup(AdaptiveDedup.BASIC_THRESHOLD, AdaptiveDedup.PARALLEL_THRESHOLD, 1);
+        String[] sorted = new String[5000], numeric = new String[5000];
+        for (int i = 0; i < sorted.length; i++) {
+            sorted[i] = String.format("w%05d", i / 3);
+            numeric[i] = Integer.toString((i * 7919) % 1000 - 500);
+        }
+        Object[][] cases = {
+                {new String[]{"b", "a", "b"}, AdaptiveDedup.Path.BASIC},
+                {new String[]{"b", null, "a", null, "b"}, AdaptiveDedup.Path.HASH},
+                {sorted, AdaptiveDedup.Path.SORTED},
+                {numeric, AdaptiveDedup.Path.NUMERIC},
+                {new Workload().size(5000).cardinality(700).generate(), AdaptiveDedup.Path.HASH},
+        };
+        for (Object[] c : cases) {
+            String[] words = (String[]) c[0];
+            String[] expected = Dedup.newOrderedDedup().dedup(words.clone());
+            if (!java.util.Arrays.equals(expected, adaptive.dedup(words.clone())))
+                throw new AssertionError("AdaptiveDedup wrong on the " + adaptive.lastPath() + " path");
+            if (adaptive.lastPath() != c[1])
+                throw new AssertionError("AdaptiveDedup took " + adaptive.lastPath() + ", expected " + c[1]);
+        }
+    }
+
+    /**
+     * Checks that <tt>Interner</tt> and <tt>CanonicalDedup</tt> return one instance per word,
+     * that <tt>PackedWords</tt> gives back its words in both layouts, and that
+     * <tt>Footprint</tt> counts a shared string once.
+     */
+    public static void testInterner(){
+        Interner interner = new Interner(1000);
+        if (interner.capacity() != 1024 || interner.intern(null) != null)
+            throw new AssertionError("Interner capacity " + interner.capacity());
+        String a = new String("word"), b = new String("word");
+        if (interner.intern(a) != a || interner.intern(b) != a)
+            throw new AssertionError("Interner returned a second instance");
+        Interner tiny = new Interner(2);
+        for (int i = 0; i < 100; i++) {
+            String w = "w" + i;
+            if (!tiny.intern(new String(w)).equals(w))
+                throw new AssertionError("Interner returned a different word after eviction");
+        }
+
+        Dedup canonical = Dedup.newCanonicalDedup();
+        String[] first = canonical.dedup(new String[]{new String("x"), new String("y"), new String("x")});
+        String[] second = canonical.dedup(new String[]{new String("y"), new String("x")});
+        if (first.length != 2 || second[0] != first[1] || second[1] != first[0])
+            throw new AssertionError("CanonicalDedup did not share instances between batches");
+
+        String[][] cases = {{}, {"", "a", "abc", "caf\u00e9"}, {"a", "\u03bb", "", "\u20ac"}};
+        for (String[] words : cases) {
+            PackedWords packed = new PackedWords(words);
+            if (!java.util.Arrays.asList(words).equals(packed))
+                throw new AssertionError("PackedWords gave " + packed + " for " + java.util.Arrays.toString(words));
+            boolean latin1 = true;
+            for (String w : words) for (char c : w.toCharArray()) latin1 &= c < 256;
+            if (packed.isLatin1() != latin1)
+                throw new AssertionError("PackedWords layout wrong for " + java.util.Arrays.toString(words));
+        }
+        String[] words = new Workload().size(10000).cardinality(10000).generate();
+        if (new PackedWords(words).footprint() >= Footprint.ofStrings(words))
+            throw new AssertionError("PackedWords is not smaller than a String[]");
+
+        String s = new String("shared");
+        long once = Footprint.ofStrings(new String[]{s, s}), twice = Footprint.ofStrings(new String[]{s, new String(s)});
+        if (twice - once != Footprint.string(s) || Footprint.array(3, 1) % 8 != 0 || Footprint.string(s) <= "shared".length())
+            throw new AssertionError("Footprint counted " + once + " and " + twice + " bytes");
+    }
+
+    /**
+     * Checks that <tt>RadixSortDedup</tt> gives the output of <tt>SortDedup</tt>, in the same
+     * order, on numeric, mixed and non-ASCII input, and that the numeric sort engine puts
+     * integers in numeric order.
+     */
+    public static void testRadixSortDedup(){
+        java.util.Random random = new java.util.Random(13);
+        String[] numeric = new String[3000], mixed = new String[3000], unicode = new String[3000];
+        for (int i = 0; i < numeric.length; i++) {
+            numeric[i] = Long.toString(random.nextInt(2000) - 1000);
+            mixed[i] = random.nextBoolean() ? numeric[i] : "w" + random.nextInt(500);
+            StringBuilder sb = new StringBuilder();
+            for (int k = random.nextInt(4); k >= 0; k--) sb.append("a\u00e9\u03bb\u4e2d\ud83d\ude00".charAt(random.nextInt(6)));
+            unicode[i] = sb.toString();
+        }
+        for (String[] words : new String[][]{numeric, mixed, unicode, {}}) {
+            String[] expected = Dedup.newSortDedup().dedup(words.clone());
+            if (!java.util.Arrays.equals(expected, Dedup.newRadixSortDedup().dedup(words.clone())))
+                throw new AssertionError("RadixSortDedup differs from SortDedup on " + java.util.Arrays.toString(expected));
+        }
+        String[] byValue = Dedup.newNumericSortDedup().dedup(numeric.clone());
+        for (int i = 1; i < byValue.length; i++)
+            if (Long.parseLong(byValue[i - 1]) >= Long.parseLong(byValue[i]))
+                throw new AssertionError("numeric sort put " + byValue[i - 1] + " before " + byValue[i]);
+    }
+
+    /**
+     * Lets several threads offer the same words to one <tt>ConcurrentDedupSet</tt>, each
+     * in its own order, and checks that every word gets exactly one <tt>true</tt>.
+     */
+    public static void testConcurrentDedupSet(){
+        int threads = 4, n = 20000;
+        String[] words = new String[n];
+        for (int i = 0; i < n; i++) words[i] = "w" + i;
+        ConcurrentDedupSet set = new ConcurrentDedupSet(0, 2);
+        java.util.concurrent.atomic.AtomicIntegerArray firsts = new java.util.concurrent.atomic.AtomicIntegerArray(n);
+        java.util.concurrent.CountDownLatch start = new java.util.concurrent.CountDownLatch(1);
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            java.util.List<Integer> order = new java.util.ArrayList<>();
+            for (int i = 0; i < n; i++) order.add(i);
+            java.util.Collections.shuffle(order, new java.util.Random(t));
+            workers[t] = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i : order)
+                    if (set.firstSeen(new String(words[i]))) firsts.incrementAndGet(i);
+            });
+            workers[t].start();
+        }
+        start.countDown();
+        try {
+            for (Thread worker : workers) worker.join();
+        } catch (InterruptedException e) {
+            throw new AssertionError(e);
+        }
+        for (int i = 0; i < n; i++)
+            if (firsts.get(i) != 1 || !set.contains(words[i]))
+                throw new AssertionError("ConcurrentDedupSet saw " + words[i] + " first " + firsts.get(i) + " times");
+        if (set.size() != n)
+            throw new AssertionError("ConcurrentDedupSet holds " + set.size() + " words, expected " + n);
+    }
+
+    /**
+     * Checks that <tt>SwissDedup</tt> gives the output of <tt>OpenAddressingDedup</tt>, also
+     * when one engine is reused for a large batch and then for small ones.
+     */
+    public static void testSwissDedup(){
+        Dedup swiss = Dedup.newSwissDedup();
+        for (int n : new int[]{0, 1, 100, 200000, 10, 3000, 50}) {
+            String[] words = new Workload().size(n).cardinality(Math.max(1, n / 3)).generate();
+            if (n == 10) words[4] = null;
+            String[] expected = Dedup.openAddressingDedup(words.clone());
+            String[] out = new String[n];
+            int count = swiss.dedupInto(words, 0, n, out);
+            if (!java.util.Arrays.equals(expected, java.util.Arrays.copyOf(out, count)))
+                throw new AssertionError("SwissDedup differs from OpenAddressingDedup at size " + n);
+        }
+    }
+
+    /**
+     * Checks that <tt>Utils.TokenFile</tt> finds the words that splitting the decoded file on
+     * whitespace finds, with leading whitespace, multi-byte characters and malformed bytes.
+     */
+    public static void testTokenFile(){
+        java.io.ByteArrayOutputStream content = new java.io.ByteArrayOutputStream();
+        byte[][] parts = {
+                " \t\n  ".getBytes(java.nio.charset.StandardCharsets.UTF_8),
+                "\u00e6\u00f8\u00e5 gj\u00f8r\r\nvi \u4e2d\ud83d\ude00x\u2003y ".getBytes(java.nio.charset.StandardCharsets.UTF_8),
+                {(byte) 0xE2, ' ', 'z', ' ', 'w', (byte) 0xE2, (byte) 0x80, 'a', ' ', (byte) 0xF0, '\n', (byte) 0xC3, (byte) 0xA6},
+        };
+        for (byte[] part : parts) content.write(part, 0, part.length);
+        String text = new String(content.toByteArray(), java.nio.charset.StandardCharsets.UTF_8);
+        java.util.List<String> expected = new java.util.ArrayList<>();
+        for (String word : text.split("[\\s\u2003]+")) if (!word.isEmpty()) expected.add(word);
+        try {
+            java.nio.file.Path file = java.nio.file.Files.createTempFile("tokens", ".txt");
+            try {
+                java.nio.file.Files.write(file, content.toByteArray());
+                java.util.List<String> words = java.util.Arrays.asList(new Utils.TokenFile(file.toString()).toArray());
+                if (!expected.equals(words))
+                    throw new AssertionError("TokenFile found " + words + ", expected " + expected);
+            } finally {
+                java.nio.file.Files.delete(file);
+            }
+        } catch (java.io.IOException e) {
+            throw new java.io.UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Checks that the hash and sort streaming engines pass on, through the sink, through
+     * <tt>accept</tt> and through <tt>dedup(Stream)</tt>, the words that <tt>OrderedDedup</tt>
+     * returns, and that <tt>sorted()</tt> lists those of <tt>SortDedup</tt>.
+     */
+    public static void testStreamingDedup(){
+        String[] words = new Workload().size(20000).cardinality(3000).skew(Workload.Skew.ZIPF).generate();
+        java.util.List<String> expected = java.util.Arrays.asList(Dedup.newOrderedDedup().dedup(words.clone()));
+
+        java.util.List<String> hashSink = new java.util.ArrayList<>(), sortSink = new java.util.ArrayList<>();
+        StreamingDedup hash = StreamingDedup.newHashStreamingDedup(hashSink::add);
+        SortStreamingDedup sort = StreamingDedup.newSortStreamingDedup(sortSink::add);
+        java.util.List<String> accepted = new java.util.ArrayList<>();
+        for (String word : words) {
+            boolean first = hash.accept(word);
+            if (first != sort.accept(word)) throw new AssertionError("streaming engines disagree on " + word);
+            if (first) accepted.add(word);
+        }
+        if (!expected.equals(hashSink) || !expected.equals(sortSink) || !expected.equals(accepted)
+                || hash.size() != expected.size() || sort.size() != expected.size())
+            throw new AssertionError("streaming engines differ from OrderedDedup");
+
+        java.util.List<String> sorted = new java.util.ArrayList<>();
+        sort.sorted().forEachRemaining(sorted::add);
+        if (!java.util.Arrays.asList(Dedup.newSortDedup().dedup(words.clone())).equals(sorted))
+            throw new AssertionError("SortStreamingDedup.sorted() differs from SortDedup");
+
+        StreamingDedup sized = StreamingDedup.newHashStreamingDedup(word -> {}, 16);
+        if (!expected.equals(sized.dedup(java.util.Arrays.stream(words)).collect(java.util.stream.Collectors.toList())))
+            throw new AssertionError("HashStreamingDedup stream differs from OrderedDedup");
+    }
+
+    /**
+     * Checks that <tt>ExternalSortDedup</tt> gives the output of <tt>SortDedup</tt> with runs
+     * so small that they are merged in several passes, and that it leaves no run files
+     * behind, also when the sink throws.
+     */
+    public static void testExternalSortDedup(){
+        try {
+            java.nio.file.Path dir = java.nio.file.Files.createTempDirectory("dedup-runs");
+            try {
+                String[] words = new Workload().size(30000).cardinality(5000).generate();
+                words[7] = "\u00e6\u00f8\u00e5";
+                String[] expected = Dedup.newSortDedup().dedup(words.clone());
+                for (int runSize : new int[]{7, 100, 40000}) { // 4286 runs take two passes before the last merge, 300 one
+                    if (!java.util.Arrays.equals(expected, new ExternalSortDedup(runSize, dir).dedup(words.clone())))
+                        throw new AssertionError("ExternalSortDedup differs from SortDedup with runs of " + runSize);
+                    if (dir.toFile().list().length != 0)
+                        throw new AssertionError("ExternalSortDedup left run files with runs of " + runSize);
+                }
+                try {
+                    new ExternalSortDedup(100, dir).dedup(java.util.Arrays.asList(words).iterator(), word -> {
+                        throw new IllegalStateException("sink failed");
+                    });
+                    throw new AssertionError("ExternalSortDedup swallowed a sink failure");
+                } catch (IllegalStateException expectedFailure) {}
+                if (dir.toFile().list().length != 0)
+                    throw new AssertionError("ExternalSortDedup left run files after a failure");
+            } finally {
+                java.nio.file.Files.delete(dir);
+            }
+        } catch (java.io.IOException e) {
+            throw new java.io.UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Checks that <tt>ByteDedup</tt> writes, one per line, the words that <tt>OrderedDedup</tt>
+     * returns for the same file, starting from a table too small for them.
+     */
+    public static void testByteDedup(){
+        String[] words = new Workload().size(20000).cardinality(4000).skew(Workload.Skew.ZIPF).generate();
+        words[3] = "\u00e6\u00f8\u00e5";
+        words[9] = "\u00e6\u00f8\u00e5";
+        words[11] = "\u4e2d\ud83d\ude00";
+        java.util.List<String> expected = java.util.Arrays.asList(Dedup.newOrderedDedup().dedup(words.clone()));
+        try {
+            java.nio.file.Path input = java.nio.file.Files.createTempFile("bytededup", ".txt");
+            java.nio.file.Path output = java.nio.file.Files.createTempFile("bytededup", ".out");
+            try {
+                java.nio.file.Files.write(input, (" " + String.join(" \n\t", words)).getBytes(java.nio.charset.StandardCharsets.UTF_8));
+                ByteDedup.dedupFile(input.toString(), output.toString());
+                if (!expected.equals(java.nio.file.Files.readAllLines(output, java.nio.charset.StandardCharsets.UTF_8)))
+                    throw new AssertionError("ByteDedup.dedupFile differs from OrderedDedup");
+
+                ByteDedup dedup = new ByteDedup(1);
+                if (dedup.add(new Utils.TokenFile(input.toString())) != expected.size() || dedup.size() != expected.size()
+                        || dedup.add(new Utils.TokenFile(input.toString())) != 0)
+                    throw new AssertionError("ByteDedup counted " + dedup.size() + " words, expected " + expected.size());
+            } finally {
+                java.nio.file.Files.delete(input);
+                java.nio.file.Files.delete(output);
+            }
+        } catch (java.io.IOException e) {
+            throw new java.io.UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Checks that <tt>NumericDedup</tt> gives the output of <tt>OrderedDedup</tt> on dense
+     * and sparse integers, which take the bitmap and the hash path, and on words that are
+     * not canonical integers, which fall back to hashing the strings.
+     */
+    public static void testNumericDedup(){
+        java.util.Random random = new java.util.Random(7);
+        String[] dense = new String[20000], sparse = new String[20000];
+        for (int i = 0; i < dense.length; i++) {
+            dense[i] = Integer.toString(random.nextInt(5000) - 2500);
+            sparse[i] = Long.toString(random.nextInt(3000) * 1000000007L - 999999999999999999L);
+        }
+        sparse[5] = "999999999999999999";
+        String[][] cases = {dense, sparse, {"1", "007", "7", "1"}, {"-0", "0", "0"}, {"+1", "1"}, {"12", null, "12"}, {}};
+        Dedup numeric = Dedup.newNumericDedup();
+        for (String[] words : cases) {
+            String[] expected = Dedup.newOrderedDedup().dedup(words.clone());
+            if (!java.util.Arrays.equals(expected, numeric.dedup(words.clone())))
+                throw new AssertionError("NumericDedup differs from OrderedDedup on " + java.util.Arrays.toString(expected));
+        }
+        if (!NumericDedup.isNumeric("-123") || NumericDedup.isNumeric("1234567890123456789") || NumericDedup.parse(new String[]{"1", "x"}) != null)
+            throw new AssertionError("NumericDedup accepted a word it cannot parse");
+
+        long[] values = NumericDedup.parse(sparse);
+        long[] unique = NumericDedup.dedup(values);
+        if (!java.util.Arrays.equals(NumericDedup.toStrings(unique), Dedup.newOrderedDedup().dedup(sparse.clone())))
+            throw new AssertionError("NumericDedup.dedup(long[]) wrong");
+        if (!java.util.Arrays.equals(NumericDedup.dedup(new int[]{3, -1, 3, Integer.MIN_VALUE, -1}), new int[]{3, -1, Integer.MIN_VALUE}))
+            throw new AssertionError("NumericDedup.dedup(int[]) wrong");
+    }
+
+    /**
+     * Checks that <tt>HyperLogLog</tt> stays within three standard errors of the true count,
+     * that merging two halves estimates the whole, and that it rejects bad precisions.
+     */
+    public static void testHyperLogLog(){
+        double bound = 3 * 1.04 / Math.sqrt(1 << HyperLogLog.DEFAULT_PRECISION);
+        for (int n : new int[]{1000, 100000, 1000000}) {
+            HyperLogLog whole = new HyperLogLog(), first = new HyperLogLog(), second = new HyperLogLog();
+            for (int i = 0; i < n; i++) {
+                String word = "w" + i;
+                whole.add(word);
+                whole.add(word);
+                (i % 2 == 0 ? first : second).add(word);
+            }
+            long estimate = whole.estimate();
+            if (Math.abs(estimate - n) > bound * n)
+                throw new AssertionError("HyperLogLog estimated " + estimate + " for " + n + " distinct words");
+            first.merge(second);
+            if (first.estimate() != estimate)
+                throw new AssertionError("merged HyperLogLog estimated " + first.estimate() + ", not " + estimate);
+        }
+        if (new HyperLogLog().estimate() != 0)
+            throw new AssertionError("empty HyperLogLog not 0");
+        for (int precision : new int[]{3, 19}) {
+            try {
+                new HyperLogLog(precision);
+                throw new AssertionError("HyperLogLog accepted precision " + precision);
+            } catch (IllegalArgumentException expected) {
+            }
+        }
+        try {
+            new HyperLogLog(10).merge(new HyperLogLog(12));
+            throw new AssertionError("HyperLogLog merged different precisions");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    /**
+     * Checks that <tt>Workload</tt> is repeatable, honours its size, cardinality, token
+     * lengths, skew, order and vocabulary, and that <tt>writeTo</tt> writes what
+     * <tt>generate</tt> returns.
+     */
+    public static void testWorkload(){
+        String[] words = new Workload().size(100000).cardinality(1000).tokenLength(3, 6).generate();
+        if (!java.util.Arrays.equals(words, new Workload().size(100000).cardinality(1000).tokenLength(3, 6).generate()))
+            throw new AssertionError("Workload not repeatable");
+        if (java.util.Arrays.equals(words, new Workload().size(100000).cardinality(1000).tokenLength(3, 6).seed(1).generate()))
+            throw new AssertionError("Workload ignores the seed");
+        if (words.length != 100000 || Dedup.newOrderedDedup().dedup(words.clone()).length != 1000)
+            throw new AssertionError("Workload size or cardinality wrong");
+        for (String word : words)
+            if (word.length() < 3 || word.length() > 6) throw new AssertionError("Workload token length wrong: " + word);
+        Runnable[] impossible = {() -> new Workload().tokenLength(0, 3), () -> new Workload().tokenLength(4, 3),
+                () -> new Workload().cardinality(1000).tokenLength(1, 2).generate()};
+        for (Runnable workload : impossible) {
+            try {
+                workload.run();
+                throw new AssertionError("Workload accepted impossible token lengths");
+            } catch (IllegalArgumentException expected) {
+            }
+        }
+
+        for (Workload.Skew skew : Workload.Skew.values()) {
+            String[] drawn = new Workload().size(100000).cardinality(1000).skew(skew).generate();
+            java.util.Map<String, Integer> counts = new java.util.HashMap<>();
+            for (String word : drawn) counts.merge(word, 1, Integer::sum);
+            int top = java.util.Collections.max(counts.values());
+            if (counts.size() > 1000 || (skew == Workload.Skew.UNIFORM) != (top < 5000))
+                throw new AssertionError("Workload " + skew + " has " + counts.size() + " words, the top one " + top + " times");
+        }
+
+        String[] drawnInOrder = new Workload().size(20000).cardinality(500).skew(Workload.Skew.ZIPF).generate();
+        java.util.Arrays.sort(drawnInOrder);
+        for (Workload.Order order : Workload.Order.values()) {
+            String[] ordered = new Workload().size(20000).cardinality(500).skew(Workload.Skew.ZIPF).order(order).generate();
+            String[] sorted = ordered.clone();
+            java.util.Arrays.sort(sorted);
+            if (!java.util.Arrays.equals(sorted, drawnInOrder))
+                throw new AssertionError("Workload " + order + " draws other words");
+            java.util.Set<String> finished = new java.util.HashSet<>();
+            for (int i = 1; i < ordered.length; i++) {
+                int c = ordered[i - 1].compareTo(ordered[i]);
+                if (order == Workload.Order.CLUSTERED && c != 0) finished.add(ordered[i - 1]);
+                if (order == Workload.Order.SORTED && c > 0 || order == Workload.Order.REVERSE && c < 0
+                        || order == Workload.Order.CLUSTERED && finished.contains(ordered[i]))
+                    throw new AssertionError("Workload not in " + order + " order at " + i);
+            }
+        }
+
+        String[] numbers = new Workload().size(10000).cardinality(2000).numeric(true).generate();
+        for (String number : numbers)
+            if (!NumericDedup.isNumeric(number)) throw new AssertionError("Workload numeric word not numeric: " + number);
+        String[] vocabulary = {"x", "y", "z", "x"};
+        java.util.Set<String> drawn = new java.util.HashSet<>(java.util.Arrays.asList(
+                new Workload().size(1000).cardinality(10).vocabulary(vocabulary).generate()));
+        if (!drawn.equals(new java.util.HashSet<>(java.util.Arrays.asList(vocabulary))))
+            throw new AssertionError("Workload ignores the vocabulary: " + drawn);
+
+        try {
+            java.nio.file.Path file = java.nio.file.Files.createTempFile("workload", ".txt");
+            try {
+                Workload workload = new Workload().size(5000).cardinality(300).skew(Workload.Skew.HOTSET).order(Workload.Order.CLUSTERED);
+                workload.writeTo(file.toString());
+                java.util.List<String> lines = java.nio.file.Files.readAllLines(file, java.nio.charset.StandardCharsets.UTF_8);
+                if (!lines.equals(java.util.Arrays.asList(workload.generate())))
+                    throw new AssertionError("Workload.writeTo differs from generate");
+            } finally {
+                java.nio.file.Files.delete(file);
+            }
+        } catch (java.io.IOException e) {
+            throw new java.io.UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Checks that <tt>RecyclingDedup</tt> gives the output of <tt>OrderedDedup</tt> batch
+     * after batch, and shrinks its table once a large batch is no longer recent. Also checks
+     * that <tt>DedupPool</tt> reuses released engines and keeps at most <tt>maxIdle</tt>.
+     */
+    public static void testRecyclingDedup(){
+        java.util.Random random = new java.util.Random(15);
+        RecyclingDedup recycling = new RecyclingDedup();
+        int[] batchSizes = new int[RecyclingDedup.BatchSizes.WINDOW + 4];
+        java.util.Arrays.fill(batchSizes, 100);
+        batchSizes[0] = 100000;
+        for (int n : batchSizes) {
+            String[] batch = new String[n + 2];
+            for (int i = 0; i < batch.length; i++) batch[i] = random.nextInt(10) == 0 ? null : "w" + random.nextInt(n / 2);
+            String[] expected = Dedup.newOrderedDedup().dedup(java.util.Arrays.copyOfRange(batch, 1, n + 1));
+            String[] out = new String[n];
+            int count = recycling.dedupInto(batch, 1, n + 1, out);
+            if (!java.util.Arrays.equals(expected, java.util.Arrays.copyOf(out, count)))
+                throw new AssertionError("RecyclingDedup differs from OrderedDedup on a batch of " + n);
+        }
+        if (recycling.capacity() > RecyclingDedup.BatchSizes.SHRINK_FACTOR * StringTable.capacityFor(100))
+            throw new AssertionError("RecyclingDedup did not shrink: " + recycling.capacity() + " slots");
+
+        DedupPool pool = new DedupPool(1);
+        RecyclingDedup first = pool.borrow(), second = pool.borrow();
+        if (first == second || pool.idle() != 0) throw new AssertionError("DedupPool handed out one engine twice");
+        pool.release(first);
+        pool.release(second);
+        if (pool.idle() != 1 || pool.borrow() != first) throw new AssertionError("DedupPool did not reuse the released engine");
+        if (pool.local() != pool.local()) throw new AssertionError("DedupPool.local not per thread");
+        String[] words = {"b", "a", null, "b", "c", null};
+        if (!java.util.Arrays.equals(pool.dedup(words.clone()), Dedup.newOrderedDedup().dedup(words.clone())))
+            throw new AssertionError("DedupPool differs from OrderedDedup");
+        try {
+            new DedupPool(-1);
+            throw new AssertionError("DedupPool accepted a negative maxIdle");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    /**
+     * Checks that <tt>DedupIndex</tt> remembers committed words across reopening, and
+     * recovers from a torn log segment, a lagging index and a damaged index. Also commits
+     * many small batches in one session, which share a mapping of the log.
+     */
+    public static void testDedupIndex(){
+        try {
+            java.nio.file.Path dir = java.nio.file.Files.createTempDirectory("dedup-index");
+            java.nio.file.Path log = dir.resolve(DedupIndex.LOG_FILE), idx = dir.resolve(DedupIndex.INDEX_FILE);
+            try {
+                String[][] batches = new String[3][3000];
+                for (int b = 0; b < batches.length; b++)
+                    for (int i = 0; i < 3000; i++) {
+                        int n = b * 1000 + i % 2000; // each batch adds 1000 new words to the last
+                        batches[b][i] = n % 7 == 0 ? "\u00e6\u00f8\u00e5" + n : "w" + n;
+                    }
+                try (DedupIndex index = Dedup.openIndex(dir)) {
+                    if (index.dedupAgainstIndex(batches[0]).length != 2000 || index.dedupAgainstIndex(batches[0]).length != 0)
+                        throw new AssertionError("DedupIndex returned seen words");
+                    index.commit();
+                    try {
+                        Dedup.openIndex(dir).close();
+                        throw new AssertionError("DedupIndex opened twice");
+                    } catch (java.io.IOException expected) {}
+                }
+                long committed;
+                byte[] stale;
+                try (DedupIndex index = Dedup.openIndex(dir)) {
+                    committed = java.nio.file.Files.size(log);
+                    stale = java.nio.file.Files.readAllBytes(idx);
+                    if (index.size() != 2000 || index.dedupAgainstIndex(batches[1]).length != 1000)
+                        throw new AssertionError("DedupIndex lost its words on reopening");
+                    index.commit();
+                }
+
+                // Abort in the middle of writing the last segment; reopening first cuts the hole
+                Dedup.openIndex(dir).close();
+                try (java.nio.channels.FileChannel channel = java.nio.channels.FileChannel.open(log, java.nio.file.StandardOpenOption.WRITE)) {
+                    channel.truncate(channel.size() - 10);
+                }
+                try (DedupIndex index = Dedup.openIndex(dir)) {
+                    if (index.size() != 2000 || java.nio.file.Files.size(log) != committed)
+                        throw new AssertionError("DedupIndex kept a torn segment");
+                    if (index.dedupAgainstIndex(batches[1]).length != 1000 || index.dedupAgainstIndex(batches[2]).length != 1000)
+                        throw new AssertionError("DedupIndex wrong after recovery");
+                }
+                try (DedupIndex index = Dedup.openIndex(dir)) {
+                    if (index.size() != 2000 || index.pendingSize() != 0)
+                        throw new AssertionError("DedupIndex kept uncommitted words");
+                    index.dedupAgainstIndex(batches[1]);
+                    index.dedupAgainstIndex(batches[2]);
+                    index.commit();
+                }
+
+                // An index that lags behind the log, or is damaged, catches up from the log
+                java.nio.file.Files.write(idx, stale);
+                try (DedupIndex index = Dedup.openIndex(dir)) {
+                    if (index.size() != 4000 || index.dedupAgainstIndex(batches[2]).length != 0 || !index.contains("\u00e6\u00f8\u00e53997"))
+                        throw new AssertionError("DedupIndex did not replay the log");
+                }
+                byte[] damaged = java.nio.file.Files.readAllBytes(idx);
+                damaged[17] ^= 1;
+                java.nio.file.Files.write(idx, damaged);
+                try (DedupIndex index = Dedup.openIndex(dir)) {
+                    if (index.size() != 4000 || index.contains("w4000") || index.dedupAgainstIndex(batches[2]).length != 0)
+                        throw new AssertionError("DedupIndex did not rebuild");
+                }
+
+                // A crash that leaves the slots of the last commit on disk, but not its header
+                byte[] header = null;
+                try (DedupIndex index = Dedup.openIndex(dir)) {
+                    for (int b = 0; b < 50; b++) {
+                        String[] batch = new String[20];
+                        for (int i = 0; i < batch.length; i++) batch[i] = "c" + b + "." + i;
+                        if (index.dedupAgainstIndex(batch).length != 20) throw new AssertionError("DedupIndex saw batch " + b);
+                        if (b == 49) header = java.util.Arrays.copyOf(java.nio.file.Files.readAllBytes(idx), 64);
+                        index.commit();
+                        if (!index.contains("c0.0") || !index.contains("c" + b + ".19") || index.contains("c" + b + ".20"))
+                            throw new AssertionError("DedupIndex lost a commit in the same session");
+                    }
+                }
+                byte[] slots = java.nio.file.Files.readAllBytes(idx);
+                System.arraycopy(header, 0, slots, 0, header.length);
+                java.nio.file.Files.write(idx, slots);
+                if (java.nio.file.Files.size(log) < 1 << 20) throw new AssertionError("DedupIndex log has no room to spare");
+                try (DedupIndex index = Dedup.openIndex(dir)) {
+                    if (index.size() != 5000 || !index.contains("c49.0") || index.dedupAgainstIndex(new String[]{"c49.19", "c50.0"}).length != 1)
+                        throw new AssertionError("DedupIndex indexed a replayed commit twice");
+                    if (java.nio.file.Files.size(log) >= 1 << 20) throw new AssertionError("DedupIndex log not cut back on reopening");
+                }
+                java.nio.ByteBuffer slotBytes = java.nio.ByteBuffer.wrap(java.nio.file.Files.readAllBytes(idx));
+                int used = 0;
+                for (int p = 64; p < slotBytes.limit(); p += 16)
+                    if (slotBytes.getLong(p) != 0) used++;
+                if (used != 5000) throw new AssertionError("DedupIndex has " + used + " slots for 5000 words");
+            } finally {
+                for (String file : new String[]{DedupIndex.LOG_FILE, DedupIndex.INDEX_FILE, DedupIndex.INDEX_FILE + ".tmp"})
+                    java.nio.file.Files.deleteIfExists(dir.resolve(file));
+                java.nio.file.Files.deleteIfExists(dir);
+            }
+        } catch (java.io.IOException e) {
+            throw new java.io.UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Checks that <tt>FrontCodedWords</tt> gives back sorted paths, with shared prefixes and
+     * non-ASCII characters, through <tt>get</tt>, <tt>indexOf</tt> and iteration, also after a
+     * trip through a file, and that a file whose first block does not start at 0 is rejected.
+     */
+    public static void testFrontCodedWords(){
+        java.util.Random random = new java.util.Random(24);
+        String[] parts = {"/usr/", "share/", "lib/", "doc/", "\u00e6\u00f8\u00e5/", "\ud83d\ude00", "x", ""};
+        for (int n = 0; n < 3000; n += 1 + n / 3) {
+            String[] words = new String[n];
+            for (int i = 0; i < n; i++) {
+                StringBuilder word = new StringBuilder();
+                for (int k = random.nextInt(6); k >= 0; k--) word.append(parts[random.nextInt(parts.length)]);
+                words[i] = word.append(random.nextInt(50)).toString();
+            }
+            String[] sorted = Dedup.sortDedup(words.clone());
+            FrontCodedWords coded = Dedup.frontCodedDedup(words);
+            if (!java.util.Arrays.asList(sorted).equals(coded) || !new java.util.ArrayList<>(coded).equals(java.util.Arrays.asList(sorted)))
+                throw new AssertionError("FrontCodedWords differs from SortDedup at size " + n);
+            for (int i = 0; i < sorted.length; i++)
+                if (coded.indexOf(sorted[i]) != i || coded.contains(sorted[i] + "\u0000") || coded.contains(sorted[i].substring(1)) != (java.util.Arrays.binarySearch(sorted, sorted[i].substring(1)) >= 0))
+                    throw new AssertionError("FrontCodedWords search wrong for " + sorted[i]);
+            try {
+                java.nio.file.Path file = java.nio.file.Files.createTempFile("frontcoded", ".bin");
+                try {
+                    coded.writeTo(file);
+                    if (!FrontCodedWords.readFrom(file).equals(coded))
+                        throw new AssertionError("FrontCodedWords changed on disk at size " + n);
+                } finally {
+                    java.nio.file.Files.delete(file);
+                }
+            } catch (java.io.IOException e) {
+                throw new java.io.UncheckedIOException(e);
+            }
+        }
+        try {
+            new FrontCodedWords(new String[]{"b", "a"});
+            throw new AssertionError("FrontCodedWords accepted unsorted words");
+        } catch (IllegalArgumentException expected) {}
+        try {
+            java.nio.file.Path file = java.nio.file.Files.createTempFile("frontcoded", ".bin");
+            try {
+                new FrontCodedWords(new String[]{"a", "b"}).writeTo(file);
+                byte[] bytes = java.nio.file.Files.readAllBytes(file);
+                bytes[19] = 1; // the offset of the first block, after four header ints
+                java.nio.file.Files.write(file, bytes);
+                FrontCodedWords.readFrom(file);
+                throw new AssertionError("FrontCodedWords read a first block that does not start at 0");
+            } catch (java.io.IOException expected) {
+            } finally {
+                java.nio.file.Files.delete(file);
+            }
+        } catch (java.io.IOException e) {
+            throw new java.io.UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Checks the counts, latencies and probe lengths that <tt>InstrumentedDedup</tt> records,
+     * the buckets of <tt>LatencyHistogram</tt>, the MBean, and the periodic dump.
+     */
+    public static void testInstrumentedDedup(){
+        InstrumentedDedup dedup = Dedup.newInstrumentedDedup(Dedup.newOpenAddressingDedup());
+        String[] words = new String[1000];
+        for (int i = 0; i < words.length; i++) words[i] = "w" + i % 100;
+        for (int k = 0; k < 10; k++) dedup.dedup(words.clone());
+        String[] out = new String[words.length];
+        if (dedup.dedupInto(words, 0, 500, out) != 100) throw new AssertionError("InstrumentedDedup changed the result");
+        dedup.setEnabled(false);
+        dedup.dedup(words.clone());
+        dedup.setEnabled(true);
+        InstrumentedDedup.Snapshot snapshot = dedup.snapshot();
+        if (snapshot.calls != 11 || snapshot.inputWords != 10500 || snapshot.uniqueWords != 1100
+                || Math.abs(snapshot.duplicateRatio() - (1 - 1100.0 / 10500)) > 1e-9)
+            throw new AssertionError("InstrumentedDedup counted wrong: " + snapshot);
+        if (snapshot.p50Nanos <= 0 || snapshot.p50Nanos > snapshot.p99Nanos || snapshot.p99Nanos > snapshot.maxNanos + snapshot.maxNanos / 32)
+            throw new AssertionError("InstrumentedDedup latency wrong: " + snapshot);
+        if (StringTable.COUNT_PROBES && (snapshot.probeLookups != 11500 || snapshot.meanProbeLength < 1))
+            throw new AssertionError("InstrumentedDedup probes wrong: " + snapshot);
+
+        for (long v = 0; v < 1L << 62; v = v * 3 + 1) {
+            long[] counts = new long[LatencyHistogram.bucket(Long.MAX_VALUE) + 1];
+            counts[LatencyHistogram.bucket(v)]++;
+            long at = LatencyHistogram.valueAt(counts, 0.5);
+            if (at < v || at > v + v / 32) throw new AssertionError("LatencyHistogram bucket wrong for " + v);
+        }
+
+        try {
+            javax.management.MBeanServer server = java.lang.management.ManagementFactory.getPlatformMBeanServer();
+            javax.management.ObjectName name = dedup.register("test");
+            try {
+                if (!Long.valueOf(11).equals(server.getAttribute(name, "Calls")))
+                    throw new AssertionError("InstrumentedDedup MBean wrong");
+                server.invoke(name, "reset", null, null);
+                if (dedup.getCalls() != 0) throw new AssertionError("InstrumentedDedup MBean did not reset");
+            } finally {
+                server.unregisterMBean(name);
+            }
+        } catch (javax.management.JMException e) {
+            throw new AssertionError(e);
+        }
+
+        java.util.concurrent.CountDownLatch dumps = new java.util.concurrent.CountDownLatch(2);
+        java.util.concurrent.ScheduledFuture<?> dump = dedup.dumpEvery(10, java.util.concurrent.TimeUnit.MILLISECONDS, s -> dumps.countDown());
+        try {
+            if (!dumps.await(5, java.util.concurrent.TimeUnit.SECONDS)) throw new AssertionError("InstrumentedDedup did not dump");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            dump.cancel(false);
+        }
+    }
+
+    /**
+     * Checks <tt>ParallelDedup</tt> on inputs large enough to be split into chunks, against
+     * <tt>OrderedDedup</tt> in order, and against <tt>SortDedup</tt> as sets.
+     */
+    public static void testParallelDedup(){
+        java.util.Random random = new java.util.Random(2);
+        for (int n : new int[]{40000, 200000}) {
+            String[] words = new String[n];
+            for (int i = 0; i < n; i++) words[i] = "w" + random.nextInt(n / 3);
+            String[] sorted = Dedup.sortDedup(words.clone());
+            String[] unordered = Dedup.newParallelDedup(4).dedup(words);
+            java.util.Arrays.sort(unordered);
+            if (!java.util.Arrays.equals(sorted, unordered))
+                throw new AssertionError("ParallelDedup differs from SortDedup at size " + n);
+            words[random.nextInt(n)] = null;
+            if (!java.util.Arrays.equals(Dedup.newOrderedDedup().dedup(words.clone()), Dedup.newParallelDedup(4, true).dedup(words)))
+                throw new AssertionError("ordered ParallelDedup differs from OrderedDedup at size " + n);
+        }
+    }
+
     /**
      * Example of a method for testing the
      * performance of a <tt>Dedup</tt>-object
@@ -112,14 +1049,25 @@ public class DedupTest {
         // Calculation of step size
         int step = (hi-lo) < numberOfLevels ? 1 : (hi-lo)/(numberOfLevels-1);
 
+        String[] buffer = new String[hi];
+
         // Main loop
         for (int size = lo; size <= hi ; size+=step){
             String[] sample = sampler.get(size);
+            /* dedupInto must leave its input alone, and agree with dedup */
+            String[] before = sample.clone();
+            int count = dedup.dedupInto(sample, 0, size, buffer);
+            if (!java.util.Arrays.equals(before, sample))
+                throw new AssertionError(dedup.getClass().getSimpleName() + ".dedupInto changed its input at size " + size);
+            if (!isCorrectDedup(sample, java.util.Arrays.copyOf(buffer, count)))
+                throw new AssertionError(dedup.getClass().getSimpleName() + ".dedupInto failed at size " + size);
             /* Do test while measuring the time */
             Utils.Stopwatch timer = new Utils.Stopwatch();
             String[] processed = dedup.dedup(sample);
 	    StdOut.print(".");
             long elapsedTime = timer.elapsedTime();
+            if (!isCorrectDedup(sample, processed))
+                throw new AssertionError(dedup.getClass().getSimpleName() + " failed at size " + size);
             /* Write measurement to output */
             output.addMeasurement(size, elapsedTime);
         }
@@ -0,0 +1,308 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.function.Consumer;
+
+/**
+ * Sort based deduplication for inputs that do not fit in memory.
+ *
+ * The words are read in runs of at most <tt>runSize</tt> words. Each run is sorted,
+ * deduplicated as in <tt>SortDedup</tt>, and spilled to a temporary file. The runs are then
+ * merged with a priority queue, which drops the duplicates between runs. If there are
+ * more than <tt>MAX_FAN_IN</tt> runs, they are merged in several passes. Only one run is
+ * held in memory at a time, and input that fits in a single run never touches the disk.
+ *
+ * The output is the same as the output of <tt>SortDedup</tt>. Words are stored as
+ * UTF-8 in the run files, so strings with unpaired surrogates do not survive a spill.
+ */
+class ExternalSortDedup implements Dedup {
+    static final int DEFAULT_RUN_SIZE = 1 << 20;
+    private static final int MAX_FAN_IN = 64;
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final int runSize;
+    private final Path tempDir;
+
+    /**
+     * Constructs an object that sorts runs of <tt>runSize</tt> words, and spills them to
+     * <tt>tempDir</tt>. If <tt>tempDir</tt> is <tt>null</tt>, the default temporary-file
+     * directory is used.
+     */
+    ExternalSortDedup(int runSize, Path tempDir) {
+        if (runSize < 1) throw new IllegalArgumentException("runSize must be positive: " + runSize);
+        this.runSize = runSize;
+        this.tempDir = tempDir;
+    }
+
+    public String[] dedup(String[] strings) {
+        List<String> output = new ArrayList<>();
+        try {
+            dedup(Arrays.asList(strings).iterator(), output::add);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return output.toArray(new String[output.size()]);
+    }
+
+    /**
+     * Reads words from the file <tt>input</tt>, and writes the unique words to the file
+     * <tt>output</tt> in sorted order, one word per line. Words are separated by whitespace,
+     * as in <tt>Utils.Sampler</tt>.
+     */
+    void dedupFile(Path input, Path output) throws IOException {
+        try (Reader in = Files.newBufferedReader(input, StandardCharsets.UTF_8);
+             BufferedWriter out = Files.newBufferedWriter(output, StandardCharsets.UTF_8)) {
+            dedup(new WordIterator(in), word -> {
+                try {
+                    out.write(word);
+                    out.newLine();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Passes the unique words of <tt>words</tt> to <tt>sink</tt> in sorted order.
+     */
+    void dedup(Iterator<String> words, Consumer<String> sink) throws IOException {
+        List<Path> runs = new ArrayList<>(), merged = new ArrayList<>();
+        try {
+            String[] buffer = new String[runSize];
+            do {
+                int count = 0;
+                while (count < runSize && words.hasNext()) buffer[count++] = words.next();
+                count = sortUnique(buffer, count);
+                if (runs.isEmpty() && !words.hasNext()) {
+                    for (int i = 0; i < count; i++) sink.accept(buffer[i]);
+                    return;
+                }
+                runs.add(writeRun(buffer, count));
+                Arrays.fill(buffer, 0, count, null);
+            } while (words.hasNext());
+            buffer = null;
+
+            while (runs.size() > MAX_FAN_IN) {
+                for (int i = 0; i < runs.size(); i += MAX_FAN_IN) {
+                    List<Path> group = runs.subList(i, Math.min(i + MAX_FAN_IN, runs.size()));
+                    merged.add(mergeToRun(group));
+                }
+                for (Path run : runs) Files.deleteIfExists(run);
+                runs = merged;
+                merged = new ArrayList<>();
+            }
+            merge(runs, sink);
+        } finally {
+            for (Path run : runs) Files.deleteIfExists(run);
+            for (Path run : merged) Files.deleteIfExists(run); // of a pass that failed
+        }
+    }
+
+    /**
+     * Sorts the first <tt>count</tt> words of <tt>buffer</tt>, and moves the unique words to
+     * the front. Returns the number of unique words.
+     */
+    private static int sortUnique(String[] buffer, int count) {
+        if (count == 0) return 0;
+        Arrays.sort(buffer, 0, count);
+        int unique = 1;
+        for (int i = 1; i < count; i++)
+            if (!buffer[i].equals(buffer[unique - 1]))
+                buffer[unique++] = buffer[i];
+        return unique;
+    }
+
+    private Path newRunFile() throws IOException {
+        return tempDir == null
+                ? Files.createTempFile("dedup-run", ".tmp")
+                : Files.createTempFile(tempDir, "dedup-run", ".tmp");
+    }
+
+    private Path writeRun(String[] words, int count) throws IOException {
+        Path run = newRunFile();
+        try (RunWriter out = new RunWriter(run, count)) {
+            for (int i = 0; i < count; i++) out.write(words[i]);
+        } catch (IOException | RuntimeException e) {
+            deleteAfterFailure(run, e);
+            throw e;
+        }
+        return run;
+    }
+
+    private Path mergeToRun(List<Path> group) throws IOException {
+        // The number of unique words is not known before the merge, so the
+        // header says -1 and the reader stops at the end of the file.
+        Path run = newRunFile();
+        try (RunWriter out = new RunWriter(run, -1)) {
+            merge(group, word -> {
+                try {
+                    out.write(word);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            deleteAfterFailure(run, e.getCause());
+            throw e.getCause();
+        } catch (IOException | RuntimeException e) {
+            deleteAfterFailure(run, e);
+            throw e;
+        }
+        return run;
+    }
+
+    private static void deleteAfterFailure(Path run, Exception failure) {
+        try {
+            Files.deleteIfExists(run);
+        } catch (IOException suppressed) {
+            failure.addSuppressed(suppressed);
+        }
+    }
+
+    private static void merge(List<Path> runs, Consumer<String> sink) throws IOException {
+        PriorityQueue<RunReader> queue = new PriorityQueue<>(Math.max(runs.size(), 1));
+        try {
+            for (Path run : runs) {
+                RunReader reader = new RunReader(run);
+                if (reader.advance()) queue.add(reader);
+                else reader.close();
+            }
+            String last = null;
+            while (!queue.isEmpty()) {
+                RunReader reader = queue.poll();
+                if (last == null || !last.equals(reader.head)) {
+                    last = reader.head;
+                    sink.accept(last);
+                }
+                if (reader.advance()) queue.add(reader);
+                else reader.close();
+            }
+        } finally {
+            for (RunReader reader : queue) reader.close();
+        }
+    }
+
+    /**
+     * Run file format: the number of words as an <tt>int</tt>, or -1 if unknown, followed by
+     * each word as an <tt>int</tt> length and that many bytes of UTF-8.
+     */
+    private static final class RunWriter implements AutoCloseable {
+        private final DataOutputStream out;
+
+        RunWriter(Path run, int count) throws IOException {
+            out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(run), BUFFER_SIZE));
+            out.writeInt(count);
+        }
+
+        void write(String word) throws IOException {
+            byte[] bytes = word.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+
+        public void close() throws IOException {out.close();}
+    }
+
+    private static final class RunReader implements Comparable<RunReader>, AutoCloseable {
+        private final DataInputStream in;
+        private int remaining;
+        private byte[] bytes = new byte[64];
+        String head;
+
+        RunReader(Path run) throws IOException {
+            in = new DataInputStream(new BufferedInputStream(Files.newInputStream(run), BUFFER_SIZE));
+            remaining = in.readInt();
+        }
+
+        /**
+         * Reads the next word into <tt>head</tt>. Returns <tt>false</tt> at the end of the run.
+         */
+        boolean advance() throws IOException {
+            if (remaining == 0) return false;
+            int length;
+            try {
+                length = in.readInt();
+            } catch (java.io.EOFException e) {
+                if (remaining > 0) throw e;
+                return false;
+            }
+            if (length > bytes.length) bytes = new byte[Math.max(length, 2 * bytes.length)];
+            in.readFully(bytes, 0, length);
+            head = new String(bytes, 0, length, StandardCharsets.UTF_8);
+            if (remaining > 0) remaining--;
+            return true;
+        }
+
+        public int compareTo(RunReader other) {return head.compareTo(other.head);}
+
+        public void close() throws IOException {in.close();}
+    }
+
+    /**
+     * Splits the characters of a <tt>Reader</tt> into words separated by whitespace.
+     */
+    private static final class WordIterator implements Iterator<String> {
+        private final Reader in;
+        private final char[] buffer = new char[BUFFER_SIZE];
+        private final StringBuilder word = new StringBuilder();
+        private int position, limit;
+        private String next;
+
+        WordIterator(Reader in) {this.in = in;}
+
+        public boolean hasNext() {
+            if (next == null) next = read();
+            return next != null;
+        }
+
+        public String next() {
+            if (!hasNext()) throw new NoSuchElementException();
+            String result = next;
+            next = null;
+            return result;
+        }
+
+        private String read() {
+            word.setLength(0);
+            while (fill()) {
+                int start = position;
+                if (word.length() == 0)
+                    while (start < limit && Character.isWhitespace(buffer[start])) start++;
+                int end = start;
+                while (end < limit && !Character.isWhitespace(buffer[end])) end++;
+                word.append(buffer, start, end - start);
+                position = end;
+                if (end < limit && word.length() > 0) break;
+            }
+            return word.length() == 0 ? null : word.toString();
+        }
+
+        private boolean fill() {
+            if (position < limit) return true;
+            try {
+                limit = in.read(buffer, 0, buffer.length);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            position = 0;
+            return limit > 0;
+        }
+    }
+}
@@ -0,0 +1,240 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.AbstractList;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+
+/**
+ * A read-only sorted list of unique words, front coded, for large sorted output such as
+ * that of <tt>SortDedup</tt> and <tt>TreeSetDedup</tt>.
+ *
+ * The words are stored as UTF-8 in one <tt>byte[]</tt>, in blocks of <tt>BLOCK_SIZE</tt>.
+ * The first word of a block is stored whole, as a varint length and its bytes; each
+ * following word as the varint length of the prefix it shares with the word before it,
+ * the varint length of the rest, and the rest. Sorted words that are long and similar,
+ * such as paths, URLs and keys, then cost little more than what differs between them.
+ *
+ * <tt>get</tt> decodes at most one block. <tt>contains</tt> and <tt>indexOf</tt> binary
+ * search the first words of the blocks, and scan one block. The iterator decodes one
+ * word per step. Like <tt>PackedWords</tt>, every word returned is a new <tt>String</tt>.
+ * Strings with unpaired surrogates do not survive the trip through UTF-8.
+ */
+class FrontCodedWords extends AbstractList<String> implements RandomAccess {
+    /** Number of words per block. */
+    static final int BLOCK_SIZE = 16;
+    private static final int MAGIC = 0x46435744; // "FCWD"
+
+    private final byte[] data;
+    private final int[] blocks; // offset in data of the first word of each block
+    private final int size;
+
+    /**
+     * Front codes <tt>sorted</tt>, which must be in strictly increasing order, as given by
+     * <tt>String.compareTo</tt>.
+     */
+    FrontCodedWords(String[] sorted) {
+        size = sorted.length;
+        blocks = new int[(size + BLOCK_SIZE - 1) / BLOCK_SIZE];
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(16, size * 4));
+        byte[] previous = new byte[0];
+        for (int i = 0; i < size; i++) {
+            if (i > 0 && sorted[i - 1].compareTo(sorted[i]) >= 0)
+                throw new IllegalArgumentException("not sorted and unique at index " + i + ": " + sorted[i]);
+            byte[] word = sorted[i].getBytes(StandardCharsets.UTF_8);
+            if (i % BLOCK_SIZE == 0) {
+                blocks[i / BLOCK_SIZE] = out.size();
+                writeVarint(out, word.length);
+                out.write(word, 0, word.length);
+            } else {
+                int prefix = 0, max = Math.min(previous.length, word.length);
+                while (prefix < max && previous[prefix] == word[prefix]) prefix++;
+                writeVarint(out, prefix);
+                writeVarint(out, word.length - prefix);
+                out.write(word, prefix, word.length - prefix);
+            }
+            previous = word;
+        }
+        data = out.toByteArray();
+    }
+
+    private FrontCodedWords(byte[] data, int[] blocks, int size) {
+        this.data = data;
+        this.blocks = blocks;
+        this.size = size;
+    }
+
+    public String get(int i) {
+        if (i < 0 || i >= size) throw new IndexOutOfBoundsException("index " + i + ", size " + size);
+        Cursor cursor = new Cursor();
+        cursor.seek(i / BLOCK_SIZE);
+        while (cursor.index < i) cursor.next();
+        return cursor.toString();
+    }
+
+    public int size() {return size;}
+
+    public boolean contains(Object o) {return indexOf(o) >= 0;}
+
+    public int indexOf(Object o) {
+        if (!(o instanceof String) || size == 0) return -1;
+        String s = (String) o;
+        Cursor cursor = new Cursor();
+        int lo = 0, hi = blocks.length - 1; // the last block that starts at or before s
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            cursor.seek(mid);
+            if (cursor.compareTo(s) <= 0) lo = mid;
+            else hi = mid - 1;
+        }
+        cursor.seek(lo);
+        int end = Math.min(size, (lo + 1) * BLOCK_SIZE);
+        while (true) {
+            int c = cursor.compareTo(s);
+            if (c == 0) return cursor.index;
+            if (c > 0 || cursor.index + 1 == end) return -1;
+            cursor.next();
+        }
+    }
+
+    public int lastIndexOf(Object o) {return indexOf(o);}
+
+    public Iterator<String> iterator() {
+        return new Iterator<String>() {
+            private final Cursor cursor = new Cursor();
+
+            public boolean hasNext() {return cursor.index + 1 < size;}
+
+            public String next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                if (cursor.index < 0) cursor.seek(0);
+                else cursor.next();
+                return cursor.toString();
+            }
+        };
+    }
+
+    /**
+     * Returns the estimated heap footprint of this object and its arrays.
+     */
+    long footprint() {
+        return Footprint.object(3) + Footprint.array(data.length, 1) + Footprint.array(blocks.length, 4);
+    }
+
+    /**
+     * Writes the words to <tt>file</tt> in one sequential pass: a header, the block
+     * offsets, and the front coded bytes as they are in memory.
+     */
+    void writeTo(Path file) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(BLOCK_SIZE);
+            out.writeInt(size);
+            out.writeInt(data.length);
+            for (int offset : blocks) out.writeInt(offset);
+            out.write(data);
+        }
+    }
+
+    /**
+     * Reads words written by <tt>writeTo</tt>.
+     */
+    static FrontCodedWords readFrom(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+            if (in.readInt() != MAGIC) throw new IOException("not a front coded file: " + file);
+            int blockSize = in.readInt(), size = in.readInt(), length = in.readInt();
+            if (blockSize != BLOCK_SIZE || size < 0 || length < 0)
+                throw new IOException("unsupported or damaged front coded file: " + file);
+            int[] blocks = new int[(size + BLOCK_SIZE - 1) / BLOCK_SIZE];
+            for (int b = 0; b < blocks.length; b++) {
+                blocks[b] = in.readInt();
+                if (b == 0 ? blocks[b] != 0 : blocks[b] <= blocks[b - 1] || blocks[b] >= length)
+                    throw new IOException("damaged front coded file: " + file);
+            }
+            byte[] data = new byte[length];
+            in.readFully(data);
+            return new FrontCodedWords(data, blocks, size);
+        }
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write(value & 0x7F | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    /**
+     * Decodes the words one at a time into a reusable buffer.
+     */
+    private final class Cursor {
+        int index = -1;
+        private int position;
+        private byte[] word = new byte[32];
+        private int length;
+
+        /**
+         * Moves to the first word of <tt>block</tt>.
+         */
+        void seek(int block) {
+            index = block * BLOCK_SIZE;
+            position = blocks[block];
+            read(0, readVarint());
+        }
+
+        /**
+         * Moves to the next word.
+         */
+        void next() {
+            if (++index % BLOCK_SIZE == 0) {
+                read(0, readVarint());
+            } else {
+                int prefix = readVarint();
+                read(prefix, readVarint());
+            }
+        }
+
+        private void read(int prefix, int suffix) {
+            length = prefix + suffix;
+            if (length > word.length) word = java.util.Arrays.copyOf(word, Math.max(length, 2 * word.length));
+            System.arraycopy(data, position, word, prefix, suffix);
+            position += suffix;
+        }
+
+        private int readVarint() {
+            int value = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = data[position++];
+                value |= (b & 0x7F) << shift;
+                if (b >= 0) return value;
+            }
+        }
+
+        /**
+         * Compares the current word with <tt>s</tt>, in the order of <tt>String.compareTo</tt>.
+         */
+        int compareTo(String s) {
+            int n = s.length();
+            for (int k = 0; k < length; k++) {
+                byte b = word[k];
+                if (b < 0) return toString().compareTo(s); // not ASCII
+                if (k == n) return 1;
+                int c = b - s.charAt(k);
+                if (c != 0) return c;
+            }
+            return length - n;
+        }
+
+        public String toString() {
+            return new String(word, 0, length, StandardCharsets.UTF_8);
+        }
+    }
+}
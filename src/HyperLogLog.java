@@ -0,0 +1,109 @@
+import java.util.Iterator;
+
+/**
+ * Estimates the number of distinct words with a HyperLogLog sketch.
+ *
+ * The sketch has 2<sup>p</sup> one byte registers, and its relative standard error is about
+ * <i>1.04 / sqrt(2<sup>p</sup>)</i>: 0.8 % for the default <i>p</i> = 14, in 16 kB.
+ * Words are added one at a time, so the sketch also works on streams, and two sketches
+ * of the same precision can be merged.
+ *
+ * The sketch hashes <tt>String.hashCode</tt>, so it really counts distinct hash codes, of
+ * which there are 2<sup>32</sup>. Among <i>n</i> distinct words, a fraction of about
+ * <i>n / 2<sup>33</sup></i> are lost to shared hash codes, which would exceed the standard
+ * error beyond some 10<sup>8</sup> words. The estimate is corrected for the expected number
+ * of such collisions, which holds as long as the hash codes are spread like random numbers.
+ *
+ * The estimate is meant for sizing the hash based <tt>Dedup</tt>-implementations before
+ * they run, e.g. <tt>Dedup.newOpenAddressingDedup(Dedup.estimateDistinct(words))</tt>.
+ */
+class HyperLogLog {
+    static final int DEFAULT_PRECISION = 14;
+    private static final double HASH_CODES = 1L << 32;
+
+    private final byte[] registers;
+    private final int precision;
+
+    HyperLogLog() {this(DEFAULT_PRECISION);}
+
+    /**
+     * Constructs a sketch with 2<sup><tt>precision</tt></sup> registers.
+     */
+    HyperLogLog(int precision) {
+        if (precision < 4 || precision > 18)
+            throw new IllegalArgumentException("precision must be between 4 and 18: " + precision);
+        this.precision = precision;
+        this.registers = new byte[1 << precision];
+    }
+
+    /**
+     * Returns the estimated number of distinct words of <tt>strings</tt>.
+     */
+    static long estimateDistinct(String[] strings) {
+        HyperLogLog sketch = new HyperLogLog();
+        for (String s : strings) sketch.add(s);
+        return sketch.estimate();
+    }
+
+    /**
+     * Returns the estimated number of distinct words of the remaining words of <tt>words</tt>.
+     */
+    static long estimateDistinct(Iterator<String> words) {
+        HyperLogLog sketch = new HyperLogLog();
+        while (words.hasNext()) sketch.add(words.next());
+        return sketch.estimate();
+    }
+
+    /**
+     * Adds a word to the sketch.
+     */
+    void add(String s) {
+        long h = mix(s == null ? 0 : s.hashCode());
+        int register = (int) (h >>> (64 - precision));
+        // rank: position of the first 1 bit in the remaining bits
+        int rank = Long.numberOfLeadingZeros((h << precision) | (1L << (precision - 1))) + 1;
+        if (rank > registers[register]) registers[register] = (byte) rank;
+    }
+
+    /**
+     * Adds all the words of <tt>other</tt> to this sketch.
+     */
+    void merge(HyperLogLog other) {
+        if (other.precision != precision)
+            throw new IllegalArgumentException("precision mismatch: " + other.precision + " != " + precision);
+        for (int i = 0; i < registers.length; i++)
+            if (other.registers[i] > registers[i]) registers[i] = other.registers[i];
+    }
+
+    /**
+     * Returns the estimated number of distinct words added.
+     */
+    long estimate() {
+        int m = registers.length;
+        double sum = 0;
+        int zeros = 0;
+        for (byte r : registers) {
+            sum += 1.0 / (1L << r);
+            if (r == 0) zeros++;
+        }
+        double alpha = 0.7213 / (1 + 1.079 / m);
+        double estimate = alpha * m * m / sum;
+        // Small range correction: linear counting while registers are still empty
+        if (estimate <= 2.5 * m && zeros > 0)
+            estimate = m * Math.log((double) m / zeros);
+        // Distinct hash codes to distinct words: n words give 2^32 (1 - e^(-n / 2^32)) codes
+        else if (estimate < HASH_CODES)
+            estimate = -HASH_CODES * Math.log(1 - estimate / HASH_CODES);
+        return Math.round(estimate);
+    }
+
+    // Finaliser of MurmurHash3, spreads String.hashCode over 64 bits
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB93FE1A85E53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
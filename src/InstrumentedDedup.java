@@ -0,0 +1,208 @@
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Deduplication that wraps any engine and records what it does, for live numbers in
+ * production. Per wrapper it counts
+ * <ul>
+ * <li> calls, input words and unique words, and so the duplicate ratio,</li>
+ * <li> the latency of each call, in a <tt>LatencyHistogram</tt>,</li>
+ * <li> the bytes the calling thread allocates per call, from
+ *      <tt>ThreadMXBean.getThreadAllocatedBytes</tt>, so work an engine hands to other
+ *      threads is not included,</li>
+ * <li> the probe lengths of the engine's hash tables, for engines that implement
+ *      <tt>ProbeStats.Source</tt>, when <tt>StringTable.COUNT_PROBES</tt> is set.</li>
+ * </ul>
+ * The numbers are published through <tt>register</tt> as a JMX MBean, and can be dumped
+ * periodically with <tt>dumpEvery</tt>. Recording allocates nothing and takes no locks,
+ * so the wrapper is as thread safe as its engine.
+ *
+ * When disabled with <tt>setEnabled(false)</tt>, a call costs one volatile read on top of
+ * the engine; <tt>Benchmark -mode overhead</tt> measures both states. Probe lengths are
+ * recorded by the tables themselves, so they are counted while disabled too; with
+ * <tt>COUNT_PROBES</tt> off, the tables have no counting code at all.
+ */
+class InstrumentedDedup implements Dedup, InstrumentedDedupMBean {
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    private final Dedup engine;
+    private final ProbeStats probes; // null if the engine's probes are not counted
+    private volatile boolean enabled = true;
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder inputWords = new LongAdder();
+    private final LongAdder uniqueWords = new LongAdder();
+    private final LongAdder allocatedBytes = new LongAdder();
+    private final LongAdder allocationCalls = new LongAdder(); // calls whose allocation was measured
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    InstrumentedDedup(Dedup engine) {
+        this.engine = engine;
+        if (StringTable.COUNT_PROBES && engine instanceof ProbeStats.Source) {
+            probes = new ProbeStats();
+            ((ProbeStats.Source) engine).countProbesInto(probes);
+        } else {
+            probes = null;
+        }
+    }
+
+    public String[] dedup(String[] strings) {
+        if (!enabled) return engine.dedup(strings);
+        int n = strings.length;
+        long allocated = allocatedBytes();
+        long start = System.nanoTime();
+        String[] unique = engine.dedup(strings);
+        long elapsed = System.nanoTime() - start;
+        record(n, unique.length, elapsed, allocated, allocatedBytes());
+        return unique;
+    }
+
+    public int dedupInto(String[] in, int from, int to, String[] out) {
+        if (!enabled) return engine.dedupInto(in, from, to, out);
+        long allocated = allocatedBytes();
+        long start = System.nanoTime();
+        int count = engine.dedupInto(in, from, to, out);
+        long elapsed = System.nanoTime() - start;
+        record(to - from, count, elapsed, allocated, allocatedBytes());
+        return count;
+    }
+
+    public boolean isInPlace() {return engine.isInPlace();}
+
+    private void record(int words, int unique, long nanos, long allocatedBefore, long allocatedAfter) {
+        calls.increment();
+        inputWords.add(words);
+        uniqueWords.add(unique);
+        latency.record(nanos);
+        if (allocatedBefore >= 0 && allocatedAfter >= allocatedBefore) {
+            allocatedBytes.add(allocatedAfter - allocatedBefore);
+            allocationCalls.increment();
+        }
+    }
+
+    private static long allocatedBytes() {
+        if (THREADS instanceof com.sun.management.ThreadMXBean)
+            return ((com.sun.management.ThreadMXBean) THREADS).getThreadAllocatedBytes(Thread.currentThread().getId());
+        return -1;
+    }
+
+    /**
+     * Returns the numbers recorded since the last <tt>reset</tt>.
+     */
+    Snapshot snapshot() {return new Snapshot(this);}
+
+    /**
+     * Registers this object with the platform MBean server as
+     * <tt>Dedup:type=InstrumentedDedup,name=</tt><i>name</i>, and returns that name.
+     */
+    ObjectName register(String name) {
+        try {
+            ObjectName objectName = new ObjectName("Dedup:type=InstrumentedDedup,name=" + ObjectName.quote(name));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+            return objectName;
+        } catch (JMException e) {
+            throw new IllegalStateException("Could not register " + name, e);
+        }
+    }
+
+    /**
+     * Passes a snapshot to <tt>sink</tt> every <tt>period</tt>, on a shared daemon thread,
+     * until the returned future is cancelled. A sink that throws is not called again.
+     */
+    ScheduledFuture<?> dumpEvery(long period, TimeUnit unit, Consumer<? super Snapshot> sink) {
+        return Dumper.TIMER.scheduleAtFixedRate(() -> sink.accept(snapshot()), period, period, unit);
+    }
+
+    private static final class Dumper {
+        static final ScheduledThreadPoolExecutor TIMER = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "dedup-metrics-dump");
+            thread.setDaemon(true);
+            return thread;
+        });
+        static {
+            TIMER.setRemoveOnCancelPolicy(true);
+        }
+    }
+
+    /*
+     * The MBean
+     */
+
+    public long getCalls() {return calls.sum();}
+    public long getInputWords() {return inputWords.sum();}
+    public long getUniqueWords() {return uniqueWords.sum();}
+    public double getDuplicateRatio() {return snapshot().duplicateRatio();}
+    public double getMeanLatencyNanos() {return LatencyHistogram.mean(latency.counts());}
+    public long getLatencyP50Nanos() {return LatencyHistogram.valueAt(latency.counts(), 0.5);}
+    public long getLatencyP99Nanos() {return LatencyHistogram.valueAt(latency.counts(), 0.99);}
+    public long getLatencyMaxNanos() {return latency.max();}
+    public double getAllocatedBytesPerCall() {return snapshot().allocatedBytesPerCall;}
+    public double getMeanProbeLength() {return probes == null ? 0 : probes.mean();}
+    public int getMaxProbeLength() {return probes == null ? 0 : probes.max;}
+    public boolean isEnabled() {return enabled;}
+    public void setEnabled(boolean enabled) {this.enabled = enabled;}
+
+    public void reset() {
+        calls.reset();
+        inputWords.reset();
+        uniqueWords.reset();
+        allocatedBytes.reset();
+        allocationCalls.reset();
+        latency.reset();
+        if (probes != null) probes.reset();
+    }
+
+    /**
+     * The numbers of an <tt>InstrumentedDedup</tt> at one point in time.
+     */
+    static final class Snapshot {
+        final long calls;
+        final long inputWords;
+        final long uniqueWords;
+        final double meanNanos;
+        final long p50Nanos;
+        final long p90Nanos;
+        final long p99Nanos;
+        final long maxNanos;
+        final double allocatedBytesPerCall; // -1 if not measurable
+        final long probeLookups;
+        final double meanProbeLength;
+        final int maxProbeLength;
+
+        private Snapshot(InstrumentedDedup dedup) {
+            calls = dedup.calls.sum();
+            inputWords = dedup.inputWords.sum();
+            uniqueWords = dedup.uniqueWords.sum();
+            long[] counts = dedup.latency.counts();
+            meanNanos = LatencyHistogram.mean(counts);
+            p50Nanos = LatencyHistogram.valueAt(counts, 0.5);
+            p90Nanos = LatencyHistogram.valueAt(counts, 0.9);
+            p99Nanos = LatencyHistogram.valueAt(counts, 0.99);
+            maxNanos = dedup.latency.max();
+            long measured = dedup.allocationCalls.sum();
+            allocatedBytesPerCall = measured == 0 ? -1 : (double) dedup.allocatedBytes.sum() / measured;
+            ProbeStats probes = dedup.probes;
+            probeLookups = probes == null ? 0 : probes.lookups;
+            meanProbeLength = probes == null ? 0 : probes.mean();
+            maxProbeLength = probes == null ? 0 : probes.max;
+        }
+
+        /**
+         * Returns the fraction of the input words that were duplicates.
+         */
+        double duplicateRatio() {return inputWords == 0 ? 0 : 1 - (double) uniqueWords / inputWords;}
+
+        public String toString() {
+            return String.format("calls=%d words=%d unique=%d dups=%.3f latency mean=%.0fns p50=%dns p90=%dns p99=%dns max=%dns"
+                            + " alloc/call=%.0fB probes mean=%.2f max=%d",
+                    calls, inputWords, uniqueWords, duplicateRatio(), meanNanos, p50Nanos, p90Nanos, p99Nanos, maxNanos,
+                    allocatedBytesPerCall, meanProbeLength, maxProbeLength);
+        }
+    }
+}
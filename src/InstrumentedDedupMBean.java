@@ -0,0 +1,20 @@
+/**
+ * The JMX view of an <tt>InstrumentedDedup</tt>. Latencies are in nanoseconds, over the
+ * calls since the last <tt>reset</tt>.
+ */
+public interface InstrumentedDedupMBean {
+    long getCalls();
+    long getInputWords();
+    long getUniqueWords();
+    double getDuplicateRatio();
+    double getMeanLatencyNanos();
+    long getLatencyP50Nanos();
+    long getLatencyP99Nanos();
+    long getLatencyMaxNanos();
+    double getAllocatedBytesPerCall();
+    double getMeanProbeLength();
+    int getMaxProbeLength();
+    boolean isEnabled();
+    void setEnabled(boolean enabled);
+    void reset();
+}
@@ -0,0 +1,64 @@
+/**
+ * A size-capped pool of canonical strings: equal words that go through the same
+ * <tt>Interner</tt> come out as the same instance, so output that is kept for a long
+ * time holds each word once, however many batches it came from.
+ *
+ * Unlike <tt>String.intern</tt>, the pool is bounded and never pins memory: it is a
+ * two-way set associative cache of <tt>capacity</tt> slots, where a word that misses
+ * both of its slots takes one of them over. A word evicted this way stays valid; it
+ * just stops being shared with later copies. Lookups are lock free: the slots only
+ * hold immutable strings, so a racing thread at worst misses and adds its own copy.
+ *
+ * Since Java 7u6, <tt>substring</tt> and <tt>split</tt> copy their characters, so a word
+ * never pins the buffer it was cut from, and from Java 9 a string of Latin-1 characters
+ * is stored one byte per character. The instance that enters the pool is therefore
+ * already compact; for packed storage of many words, see <tt>PackedWords</tt>.
+ */
+class Interner {
+    /** Default number of slots. */
+    static final int DEFAULT_CAPACITY = 1 << 16;
+
+    private final String[] slots;
+    private final int shift;
+
+    Interner() {this(DEFAULT_CAPACITY);}
+
+    /**
+     * Constructs a pool of <tt>capacity</tt> slots, rounded up to a power of two.
+     */
+    Interner(int capacity) {
+        int n = 2;
+        while (n < capacity && n < 1 << 30) n <<= 1;
+        slots = new String[n];
+        shift = Integer.numberOfLeadingZeros(n) + 1;
+    }
+
+    /**
+     * Returns the pooled instance equal to <tt>s</tt>, pooling <tt>s</tt> itself if there
+     * is none.
+     */
+    String intern(String s) {
+        if (s == null) return null;
+        int h = s.hashCode();
+        int i = (h * 0x9E3779B9) >>> shift, j = i ^ 1;
+        String[] slots = this.slots;
+        String c = slots[i];
+        if (c != null && c.hashCode() == h && c.equals(s)) return c;
+        String d = slots[j];
+        if (d != null && d.hashCode() == h && d.equals(s)) return d;
+        slots[c == null || d != null ? i : j] = s;
+        return s;
+    }
+
+    /**
+     * Replaces each word of <tt>words[from..to)</tt> with its pooled instance.
+     */
+    void internAll(String[] words, int from, int to) {
+        for (int i = from; i < to; i++) words[i] = intern(words[i]);
+    }
+
+    /**
+     * Returns the number of slots.
+     */
+    int capacity() {return slots.length;}
+}
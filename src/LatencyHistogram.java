@@ -0,0 +1,91 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of non-negative <tt>long</tt> values, such as latencies in nanoseconds, in
+ * the log-linear layout of HdrHistogram.
+ *
+ * Values below 32 have a bucket each. Above that, every power of two is split into 32
+ * buckets, so a bucket is at most about 3 % wide, and the 1888 buckets cover every
+ * <tt>long</tt>. The counts are in an <tt>AtomicLongArray</tt>, so <tt>record</tt> is thread
+ * safe, lock free and allocates nothing.
+ */
+class LatencyHistogram {
+    private static final int SUB_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    private static final int BUCKETS = SUB_BUCKETS + (63 - SUB_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records <tt>value</tt>; negative values count as 0.
+     */
+    void record(long value) {
+        if (value < 0) value = 0;
+        counts.incrementAndGet(bucket(value));
+        for (long m; value > (m = max.get()); )
+            if (max.compareAndSet(m, value)) break;
+    }
+
+    /**
+     * Returns the counts of the buckets, copied so that the other methods see one
+     * consistent state.
+     */
+    long[] counts() {
+        long[] copy = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) copy[i] = counts.get(i);
+        return copy;
+    }
+
+    long max() {return max.get();}
+
+    void reset() {
+        for (int i = 0; i < BUCKETS; i++) counts.set(i, 0);
+        max.set(0);
+    }
+
+    /**
+     * Returns the value at quantile <tt>q</tt> of <tt>counts</tt>, as the upper end of its
+     * bucket, or 0 if there are no values.
+     */
+    static long valueAt(long[] counts, double q) {
+        long total = 0;
+        for (long c : counts) total += c;
+        if (total == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(q * total)), seen = 0;
+        for (int i = 0; i < counts.length; i++)
+            if ((seen += counts[i]) >= rank) return highest(i);
+        return highest(counts.length - 1);
+    }
+
+    /**
+     * Returns the mean of <tt>counts</tt>, taking each bucket at its middle.
+     */
+    static double mean(long[] counts) {
+        long total = 0;
+        double sum = 0;
+        for (int i = 0; i < counts.length; i++) {
+            total += counts[i];
+            sum += counts[i] * ((double) lowest(i) + highest(i)) / 2;
+        }
+        return total == 0 ? 0 : sum / total;
+    }
+
+    static int bucket(long value) {
+        if (value < SUB_BUCKETS) return (int) value;
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+        return SUB_BUCKETS + shift * SUB_BUCKETS + (int) (value >>> shift) - SUB_BUCKETS;
+    }
+
+    private static long lowest(int bucket) {
+        if (bucket < SUB_BUCKETS) return bucket;
+        int shift = bucket / SUB_BUCKETS - 1;
+        return (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+    }
+
+    private static long highest(int bucket) {
+        if (bucket == BUCKETS - 1) return Long.MAX_VALUE;
+        return lowest(bucket + 1) - 1;
+    }
+}
@@ -0,0 +1,203 @@
+import java.util.Arrays;
+
+/**
+ * Deduplication of words that are all decimal integers, like the words of <tt>tall100.txt</tt>.
+ *
+ * The words are parsed to <tt>long</tt>s, and the duplicates are found among the numbers. If the
+ * numbers fall in a small enough range, a bitmap is used; otherwise an open addressing table of
+ * <tt>long</tt>s. The output keeps the original strings in first occurrence order, compacted in
+ * place like <tt>BasicDedup</tt>.
+ *
+ * A word only counts as numeric if it is the canonical form of its value, i.e. what
+ * <tt>Long.toString</tt> would give, so that equal numbers are always equal strings.
+ * If any word is not, the input is handed to <tt>OpenAddressingDedup</tt> instead.
+ *
+ * The static methods on <tt>long[]</tt> and <tt>int[]</tt> skip the strings altogether.
+ */
+class NumericDedup implements Dedup {
+    /** Largest range of values that is deduplicated with a bitmap (8 MB of bits). */
+    static final long BITMAP_RANGE = 1L << 26;
+    private static final int MAX_DIGITS = 18; // any 18 digit number fits in a long
+
+    // Scratch space, kept between calls to dedupInto
+    private long[] values = new long[0];
+    private long[] bits = new long[0];
+    private LongTable table;
+    private OpenAddressingDedup fallback;
+
+    public String[] dedup(String[] strings) {
+        return Arrays.copyOf(strings, dedupInto(strings, 0, strings.length, strings));
+    }
+
+    public int dedupInto(String[] in, int from, int to, String[] out) {
+        int n = to - from;
+        if (values.length < n) values = new long[n];
+        if (!parse(in, from, to, values)) {
+            if (fallback == null) fallback = new OpenAddressingDedup();
+            return fallback.dedupInto(in, from, to, out);
+        }
+        if (out != in || from != 0) System.arraycopy(in, from, out, 0, n);
+        return dedup(values, n, out);
+    }
+
+    public boolean isInPlace() {return true;}
+
+    /**
+     * Returns the values of <tt>values</tt> with the duplicates removed, in first occurrence order.
+     */
+    static long[] dedup(long[] values) {
+        long[] copy = values.clone();
+        return Arrays.copyOf(copy, new NumericDedup().dedup(copy, copy.length, null));
+    }
+
+    /**
+     * Returns the values of <tt>values</tt> with the duplicates removed, in first occurrence order.
+     */
+    static int[] dedup(int[] values) {
+        long[] wide = new long[values.length];
+        for (int i = 0; i < values.length; i++) wide[i] = values[i];
+        int count = new NumericDedup().dedup(wide, wide.length, null);
+        int[] output = new int[count];
+        for (int i = 0; i < count; i++) output[i] = (int) wide[i];
+        return output;
+    }
+
+    /**
+     * Returns the decimal representation of each value.
+     */
+    static String[] toStrings(long[] values) {
+        String[] strings = new String[values.length];
+        for (int i = 0; i < values.length; i++) strings[i] = Long.toString(values[i]);
+        return strings;
+    }
+
+    /**
+     * Parses each word to a <tt>long</tt>. Returns <tt>null</tt> if any word is not a
+     * canonical decimal integer of at most 18 digits.
+     */
+    static long[] parse(String[] strings) {
+        long[] values = new long[strings.length];
+        return parse(strings, 0, strings.length, values) ? values : null;
+    }
+
+    /**
+     * Parses the words of <tt>strings[from..to)</tt> into <tt>values[0..to-from)</tt>.
+     * Returns <tt>false</tt> if any word is not a canonical decimal integer.
+     */
+    static boolean parse(String[] strings, int from, int to, long[] values) {
+        for (int i = from; i < to; i++) {
+            String s = strings[i];
+            if (!isNumeric(s)) return false;
+            int start = s.charAt(0) == '-' ? 1 : 0;
+            long value = 0;
+            for (int j = start, length = s.length(); j < length; j++)
+                value = value * 10 + (s.charAt(j) - '0');
+            values[i - from] = start == 1 ? -value : value;
+        }
+        return true;
+    }
+
+    /**
+     * Returns <tt>true</tt> if <tt>s</tt> is the canonical form of an integer of at most
+     * 18 digits, i.e. what <tt>Long.toString</tt> gives for it.
+     */
+    static boolean isNumeric(String s) {
+        if (s == null) return false;
+        int length = s.length();
+        int start = length > 0 && s.charAt(0) == '-' ? 1 : 0;
+        int digits = length - start;
+        if (digits == 0 || digits > MAX_DIGITS) return false;
+        if (s.charAt(start) == '0' && (digits > 1 || start == 1)) return false; // "007", "-0"
+        for (int j = start; j < length; j++) {
+            char c = s.charAt(j);
+            if (c < '0' || c > '9') return false;
+        }
+        return true;
+    }
+
+    /**
+     * Moves the first occurrence of each value of <tt>values[0..length)</tt> to the front,
+     * in order, and returns the number of unique values. If <tt>companions</tt> is not
+     * <tt>null</tt>, its elements are moved along with the values.
+     */
+    int dedup(long[] values, int length, Object[] companions) {
+        if (length == 0) return 0;
+        long min = values[0], max = values[0];
+        for (int i = 1; i < length; i++) {
+            if (values[i] < min) min = values[i];
+            else if (values[i] > max) max = values[i];
+        }
+        long range = max - min; // may overflow to negative for extreme ranges
+        if (range >= 0 && range < BITMAP_RANGE && range / 64 <= length)
+            return bitmapDedup(values, length, companions, min, (int) range + 1);
+        return hashDedup(values, length, companions);
+    }
+
+    private int bitmapDedup(long[] values, int length, Object[] companions, long min, int range) {
+        int words = (range + 63) >>> 6;
+        if (bits.length < words) bits = new long[words];
+        else Arrays.fill(bits, 0, words, 0);
+        int count = 0;
+        for (int i = 0; i < length; i++) {
+            int offset = (int) (values[i] - min);
+            long mask = 1L << offset;
+            if ((bits[offset >>> 6] & mask) != 0) continue;
+            bits[offset >>> 6] |= mask;
+            if (companions != null) companions[count] = companions[i];
+            values[count++] = values[i];
+        }
+        return count;
+    }
+
+    private int hashDedup(long[] values, int length, Object[] companions) {
+        if (table == null || !table.reset(length)) table = new LongTable(length);
+        int count = 0;
+        for (int i = 0; i < length; i++) {
+            if (!table.add(values[i])) continue;
+            if (companions != null) companions[count] = companions[i];
+            values[count++] = values[i];
+        }
+        return count;
+    }
+
+    /**
+     * Open addressing set of <tt>long</tt>s, with linear probing. 0 marks an empty slot,
+     * so the value 0 is kept in a separate flag. Sized up front, never grows, but can be
+     * reset for reuse.
+     */
+    private static final class LongTable {
+        private final long[] keys;
+        private final int mask;
+        private final int shift;
+        private boolean hasZero;
+
+        LongTable(int expectedSize) {
+            int capacity = StringTable.capacityFor(expectedSize);
+            keys = new long[capacity];
+            mask = capacity - 1;
+            shift = Long.numberOfLeadingZeros(capacity) + 1;
+        }
+
+        /**
+         * Empties the table. Returns <tt>false</tt> if it is too small for <tt>expectedSize</tt>.
+         */
+        boolean reset(int expectedSize) {
+            if (StringTable.capacityFor(expectedSize) > keys.length) return false;
+            Arrays.fill(keys, 0);
+            hasZero = false;
+            return true;
+        }
+
+        boolean add(long key) {
+            if (key == 0) {
+                if (hasZero) return false;
+                return hasZero = true;
+            }
+            int i = (int) ((key * 0x9E3779B97F4A7C15L) >>> shift);
+            for (long k; (k = keys[i]) != 0; i = (i + 1) & mask)
+                if (k == key) return false;
+            keys[i] = key;
+            return true;
+        }
+    }
+}
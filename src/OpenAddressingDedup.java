@@ -0,0 +1,61 @@
+import java.util.Arrays;
+
+/**
+ * Same first occurrence order as <tt>BasicDedup</tt>, but the duplicate check is a lookup
+ * in a <tt>StringTable</tt> sized from <tt>strings.length</tt>, so the table never grows.
+ * Nothing is allocated besides the table and the result array.
+ *
+ * With a size hint, the table is sized for that many unique words instead, and grows
+ * if the hint was too small.
+ *
+ * <tt>dedupInto</tt> keeps its table between calls, and only reallocates it when a
+ * larger input comes along.
+ */
+class OpenAddressingDedup implements Dedup, ProbeStats.Source {
+    private final int expectedSize;
+    private StringTable table;
+    private ProbeStats probes;
+
+    OpenAddressingDedup(){this(-1);}
+    OpenAddressingDedup(int expectedSize){this.expectedSize = expectedSize;}
+
+    public String[] dedup(String[] strings) {
+        StringTable table = new StringTable(expectedSize < 0 ? strings.length : expectedSize);
+        table.countProbesInto(probes);
+        int count = 0;
+        for (String current : strings)
+            if (table.add(current))
+                strings[count++] = current;
+        return Arrays.copyOf(strings, count);
+    }
+
+    public int dedupInto(String[] in, int from, int to, String[] out) {
+        return dedupInto(in, from, to, out, expectedSize < 0 ? to - from : expectedSize);
+    }
+
+    /**
+     * <tt>dedupInto</tt> with a table sized for <tt>expectedSize</tt> unique words.
+     */
+    int dedupInto(String[] in, int from, int to, String[] out, int expectedSize) {
+        if (table == null) {
+            table = new StringTable(expectedSize);
+            table.countProbesInto(probes);
+        } else {
+            table.reset(expectedSize);
+        }
+        int count = 0;
+        for (int i = from; i < to; i++) {
+            String current = in[i];
+            if (table.add(current))
+                out[count++] = current;
+        }
+        return count;
+    }
+
+    public boolean isInPlace() {return true;}
+
+    public void countProbesInto(ProbeStats stats) {
+        probes = stats;
+        if (table != null) table.countProbesInto(stats);
+    }
+}
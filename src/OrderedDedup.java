@@ -0,0 +1,54 @@
+import java.util.Arrays;
+
+/**
+ * Order preserving deduplication in expected linear time, as a drop-in replacement for
+ * <tt>ArrayListDedup</tt>, whose <tt>contains</tt> makes it quadratic.
+ *
+ * The first pass records, for every word, the position of its first occurrence in a
+ * <tt>StringIntMap</tt>, or its last occurrence in the keep-last variant. The second
+ * pass walks the input again and keeps exactly the words found at their recorded
+ * position, so the output is in input order. Keeping the first occurrence gives the
+ * same output as <tt>ArrayListDedup</tt> and <tt>BasicDedup</tt>; keeping the last
+ * gives each word where it last appeared, still in input order.
+ *
+ * The index is kept between calls, and only reallocated for a larger input.
+ */
+class OrderedDedup implements Dedup {
+    private final boolean keepLast;
+    private final StringIntMap positions = new StringIntMap(0);
+
+    OrderedDedup() {this(false);}
+
+    /**
+     * @param keepLast keep the last occurrence of each word instead of the first
+     */
+    OrderedDedup(boolean keepLast) {this.keepLast = keepLast;}
+
+    public String[] dedup(String[] strings) {
+        return Arrays.copyOf(strings, dedupInto(strings, 0, strings.length, strings));
+    }
+
+    public int dedupInto(String[] in, int from, int to, String[] out) {
+        positions.reset(to - from);
+        int nullPosition = -1;
+        for (int i = from; i < to; i++) {
+            String s = in[i];
+            if (s == null) {
+                if (keepLast || nullPosition < 0) nullPosition = i;
+            } else if (keepLast) {
+                positions.put(s, i);
+            } else {
+                positions.putIfAbsent(s, i);
+            }
+        }
+        int count = 0;
+        for (int i = from; i < to; i++) {
+            String s = in[i];
+            if ((s == null ? nullPosition : positions.get(s)) == i)
+                out[count++] = s;
+        }
+        return count;
+    }
+
+    public boolean isInPlace() {return true;}
+}
@@ -0,0 +1,67 @@
+import java.util.AbstractList;
+
+/**
+ * A read-only list of words packed into one array, for large sets of unique words that
+ * are kept for a long time.
+ *
+ * A <tt>String[]</tt> costs a reference, a <tt>String</tt> object and an array header per
+ * word on top of the characters, about 40 bytes with compressed oops. Here a word costs
+ * its characters and one <tt>int</tt> offset. If every character is Latin-1, which covers
+ * ASCII tokens, the arena is a <tt>byte[]</tt> of one byte per character; otherwise a
+ * <tt>char[]</tt>. <tt>get</tt> builds a new <tt>String</tt> each time.
+ */
+class PackedWords extends AbstractList<String> {
+    private final byte[] latin1; // null unless every word is Latin-1
+    private final char[] chars;  // null if latin1 is used
+    private final int[] offsets; // offsets[i] to offsets[i + 1] is word i
+
+    /**
+     * Packs <tt>words</tt>, which must not contain <tt>null</tt>.
+     */
+    PackedWords(String[] words) {
+        offsets = new int[words.length + 1];
+        boolean isLatin1 = true;
+        long length = 0;
+        for (int i = 0; i < words.length; i++) {
+            String w = words[i];
+            for (int j = 0; isLatin1 && j < w.length(); j++) isLatin1 = w.charAt(j) < 256;
+            length += w.length();
+            if (length > Integer.MAX_VALUE - 8) throw new IllegalArgumentException("too many characters: " + length);
+            offsets[i + 1] = (int) length;
+        }
+        if (isLatin1) {
+            latin1 = new byte[(int) length];
+            chars = null;
+            for (int i = 0; i < words.length; i++)
+                for (int j = 0, o = offsets[i]; j < words[i].length(); j++) latin1[o + j] = (byte) words[i].charAt(j);
+        } else {
+            latin1 = null;
+            chars = new char[(int) length];
+            for (int i = 0; i < words.length; i++) words[i].getChars(0, words[i].length(), chars, offsets[i]);
+        }
+    }
+
+    public String get(int i) {
+        if (i < 0 || i >= size()) throw new IndexOutOfBoundsException("index " + i + ", size " + size());
+        int from = offsets[i], to = offsets[i + 1];
+        if (chars != null) return new String(chars, from, to - from);
+        char[] word = new char[to - from];
+        for (int j = 0; j < word.length; j++) word[j] = (char) (latin1[from + j] & 0xFF);
+        return new String(word);
+    }
+
+    public int size() {return offsets.length - 1;}
+
+    /**
+     * Returns <tt>true</tt> if the words are stored one byte per character.
+     */
+    boolean isLatin1() {return latin1 != null;}
+
+    /**
+     * Returns the estimated heap footprint of this object and its arrays.
+     */
+    long footprint() {
+        return Footprint.object(3) + Footprint.array(offsets.length, 4)
+                + (latin1 != null ? Footprint.array(latin1.length, 1) : Footprint.array(chars.length, 2));
+    }
+}
@@ -0,0 +1,190 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.IntConsumer;
+
+/**
+ * Deduplication on a <tt>ForkJoinPool</tt>, in three phases:
+ * <ol>
+ * <li> The input is split into chunks, and each chunk is deduplicated locally. The first
+ *      occurrences found in a chunk are sorted into partitions by their hash code.</li>
+ * <li> Each partition merges the chunks in input order. A word can only ever land in one
+ *      partition, so no set is shared between threads.</li>
+ * <li> The surviving words are copied to the output array, either partition by partition,
+ *      or in first occurrence order.</li>
+ * </ol>
+ * The input array is not modified. Inputs below <tt>MIN_CHUNK</tt> are deduplicated on the
+ * calling thread. Engines of the same parallelism share one pool, which is never shut
+ * down; its idle workers exit on their own.
+ */
+class ParallelDedup implements Dedup {
+    private static final int MIN_CHUNK = 1 << 14;
+    private static final ConcurrentHashMap<Integer, ForkJoinPool> POOLS = new ConcurrentHashMap<>();
+
+    private final ForkJoinPool pool;
+    private final int parallelism;
+    private final boolean keepOrder;
+
+    ParallelDedup(int parallelism, boolean keepOrder) {
+        if (parallelism < 1) throw new IllegalArgumentException("parallelism must be positive: " + parallelism);
+        this.pool = POOLS.computeIfAbsent(parallelism, ForkJoinPool::new);
+        this.parallelism = parallelism;
+        this.keepOrder = keepOrder;
+    }
+
+    public String[] dedup(String[] strings) {
+        int n = strings.length;
+        if (parallelism == 1 || n < 2 * MIN_CHUNK)
+            return new OpenAddressingDedup().dedup(strings.clone());
+
+        int chunks = Math.min(4 * parallelism, n / MIN_CHUNK);
+        int partitions = Integer.highestOneBit(2 * parallelism - 1) << 1;
+        IntList[][] local = new IntList[chunks][partitions];
+
+        // Phase 1: local dedup per chunk, first occurrences split by partition
+        forEach(chunks, c -> {
+            int lo = chunkStart(n, chunks, c), hi = chunkStart(n, chunks, c + 1);
+            IntList[] parts = local[c];
+            for (int p = 0; p < partitions; p++) parts[p] = new IntList((hi - lo) / partitions + 16);
+            IndexTable seen = new IndexTable(strings, hi - lo);
+            for (int i = lo; i < hi; i++) {
+                int h = hash(strings[i]);
+                if (seen.add(i, h))
+                    parts[partitionOf(h, partitions)].add(i);
+            }
+        });
+
+        // Phase 2: merge each partition across chunks, in input order
+        IntList[] merged = new IntList[partitions];
+        boolean[] first = keepOrder ? new boolean[n] : null;
+        forEach(partitions, p -> {
+            int total = 0;
+            for (int c = 0; c < chunks; c++) total += local[c][p].size;
+            IndexTable seen = new IndexTable(strings, total);
+            IntList out = new IntList(total);
+            for (int c = 0; c < chunks; c++) {
+                IntList part = local[c][p];
+                for (int k = 0; k < part.size; k++) {
+                    int i = part.data[k];
+                    if (seen.add(i, hash(strings[i]))) {
+                        out.add(i);
+                        if (first != null) first[i] = true;
+                    }
+                }
+                local[c][p] = null;
+            }
+            merged[p] = out;
+        });
+
+        // Phase 3: gather
+        return keepOrder ? gatherInOrder(strings, first, chunks) : gather(strings, merged);
+    }
+
+    private String[] gather(String[] strings, IntList[] merged) {
+        int[] offsets = new int[merged.length + 1];
+        for (int p = 0; p < merged.length; p++) offsets[p + 1] = offsets[p] + merged[p].size;
+        String[] output = new String[offsets[merged.length]];
+        forEach(merged.length, p -> {
+            IntList part = merged[p];
+            for (int k = 0, j = offsets[p]; k < part.size; k++, j++) output[j] = strings[part.data[k]];
+        });
+        return output;
+    }
+
+    private String[] gatherInOrder(String[] strings, boolean[] first, int chunks) {
+        int n = strings.length;
+        int[] offsets = new int[chunks + 1];
+        forEach(chunks, c -> {
+            int count = 0;
+            for (int i = chunkStart(n, chunks, c), hi = chunkStart(n, chunks, c + 1); i < hi; i++)
+                if (first[i]) count++;
+            offsets[c + 1] = count;
+        });
+        for (int c = 0; c < chunks; c++) offsets[c + 1] += offsets[c];
+        String[] output = new String[offsets[chunks]];
+        forEach(chunks, c -> {
+            int j = offsets[c];
+            for (int i = chunkStart(n, chunks, c), hi = chunkStart(n, chunks, c + 1); i < hi; i++)
+                if (first[i]) output[j++] = strings[i];
+        });
+        return output;
+    }
+
+    /**
+     * Runs <tt>body</tt> for <tt>0 .. count-1</tt> on the pool, and waits for all of them.
+     */
+    private void forEach(int count, IntConsumer body) {
+        List<ForkJoinTask<?>> tasks = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int task = i;
+            tasks.add(ForkJoinTask.adapt(() -> body.accept(task)));
+        }
+        pool.invoke(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(tasks)));
+    }
+
+    private static int chunkStart(int n, int chunks, int c) {
+        return (int) ((long) n * c / chunks);
+    }
+
+    private static int hash(String s) {
+        return s == null ? 0 : s.hashCode();
+    }
+
+    // The tables index on the high bits of the hash, so partitions use the low bits.
+    private static int partitionOf(int h, int partitions) {
+        return (h ^ (h >>> 16)) & (partitions - 1);
+    }
+
+    /**
+     * Growable <tt>int[]</tt>.
+     */
+    private static final class IntList {
+        int[] data;
+        int size;
+
+        IntList(int capacity) {data = new int[Math.max(capacity, 1)];}
+
+        void add(int value) {
+            if (size == data.length) data = Arrays.copyOf(data, size << 1);
+            data[size++] = value;
+        }
+    }
+
+    /**
+     * Open addressing set of indices into a shared <tt>String[]</tt>. Two indices are the
+     * same element if the strings they point to are equal. Never grows, so it must be
+     * sized for the number of indices added.
+     */
+    private static final class IndexTable {
+        private final String[] strings;
+        private final int[] slots; // index + 1, 0 is empty
+        private final int[] hashes;
+        private final int mask;
+        private final int shift;
+
+        IndexTable(String[] strings, int expectedSize) {
+            int capacity = StringTable.capacityFor(expectedSize);
+            this.strings = strings;
+            this.slots = new int[capacity];
+            this.hashes = new int[capacity];
+            this.mask = capacity - 1;
+            this.shift = Integer.numberOfLeadingZeros(capacity) + 1;
+        }
+
+        boolean add(int index, int h) {
+            String s = strings[index];
+            int i = (h * 0x9E3779B9) >>> shift;
+            for (int slot; (slot = slots[i]) != 0; i = (i + 1) & mask) {
+                if (hashes[i] != h) continue;
+                String t = strings[slot - 1];
+                if (t == s || (t != null && t.equals(s))) return false;
+            }
+            slots[i] = index + 1;
+            hashes[i] = h;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,36 @@
+/**
+ * Probe lengths of hash table lookups: how many slots each lookup looked at, 1 for a
+ * lookup that ends in its home slot. Recorded by one thread at a time; other threads
+ * may read slightly stale values.
+ */
+class ProbeStats {
+    long lookups;
+    long probes;
+    int max;
+
+    void record(int length) {
+        lookups++;
+        probes += length;
+        if (length > max) max = length;
+    }
+
+    /**
+     * Returns the mean probe length, or 0 if nothing has been recorded.
+     */
+    double mean() {return lookups == 0 ? 0 : (double) probes / lookups;}
+
+    void reset() {
+        lookups = probes = 0;
+        max = 0;
+    }
+
+    /**
+     * Implemented by engines whose hash tables can count their probes.
+     */
+    interface Source {
+        /**
+         * Makes the tables of this engine record their probe lengths in <tt>stats</tt>.
+         */
+        void countProbesInto(ProbeStats stats);
+    }
+}
@@ -0,0 +1,153 @@
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Sort based deduplication without <tt>String.compareTo</tt> on the hot path.
+ *
+ * Words are sorted with a three-way string quicksort (Bentley and Sedgewick), which
+ * partitions on one character at a time. When a partition holds the words that end at the
+ * current character, they are all equal, so the partition collapses to its first word at
+ * once and the others are cleared. A final pass compacts the survivors. The output is in
+ * the same order as <tt>SortDedup</tt>.
+ *
+ * With <tt>numericOrder</tt> set, input where every word is a decimal integer (see
+ * <tt>NumericDedup</tt>) is instead parsed and sorted with an LSD radix sort, eight bits per
+ * pass, and comes out in numeric order; other input still comes out like <tt>SortDedup</tt>.
+ */
+class RadixSortDedup implements Dedup {
+    private static final int CUTOFF = 15;
+
+    private final boolean numericOrder;
+
+    // Scratch space, kept between calls to dedupInto
+    private long[] keys = new long[0], auxKeys = new long[0];
+    private String[] auxWords = new String[0];
+    private final int[] count = new int[257];
+
+    RadixSortDedup() {this(false);}
+    RadixSortDedup(boolean numericOrder) {this.numericOrder = numericOrder;}
+
+    public String[] dedup(String[] strings) {
+        return Arrays.copyOf(strings, dedupInto(strings, 0, strings.length, strings));
+    }
+
+    public int dedupInto(String[] in, int from, int to, String[] out) {
+        int n = to - from;
+        if (numericOrder && keys.length < n) {
+            keys = new long[n];
+            auxKeys = new long[n];
+        }
+        if (numericOrder && NumericDedup.parse(in, from, to, keys)) {
+            if (auxWords.length < n) auxWords = new String[n];
+            if (out != in || from != 0) System.arraycopy(in, from, out, 0, n);
+            return radixSortUnique(keys, auxKeys, out, auxWords, n, count);
+        }
+        if (out != in || from != 0) System.arraycopy(in, from, out, 0, n);
+        sort(out, 0, n - 1, 0);
+        int unique = 0;
+        for (int i = 0; i < n; i++)
+            if (out[i] != null)
+                out[unique++] = out[i];
+        return unique;
+    }
+
+    public boolean isInPlace() {return true;}
+
+    /**
+     * Returns the unique values of <tt>values</tt> in increasing order.
+     */
+    static long[] sortUnique(long[] values) {
+        int n = values.length;
+        long[] a = values.clone();
+        return Arrays.copyOf(a, radixSortUnique(a, new long[n], null, null, n, new int[257]));
+    }
+
+    /**
+     * Sorts <tt>a[0..n)</tt> with an LSD radix sort and moves its unique values to the
+     * front, returning their number. If <tt>words</tt> is not <tt>null</tt>, its elements
+     * are moved along with the values. The <tt>aux</tt> arrays are scratch space.
+     */
+    private static int radixSortUnique(long[] a, long[] aux, String[] words, String[] auxWords, int n, int[] count) {
+        long[] a0 = a;
+        String[] w0 = words;
+        for (int i = 0; i < n; i++) a[i] ^= Long.MIN_VALUE; // unsigned order = signed order
+        for (int shift = 0; shift < 64; shift += 8) {
+            Arrays.fill(count, 0);
+            for (int i = 0; i < n; i++) count[(int) (a[i] >>> shift & 0xFF) + 1]++;
+            if (n > 0 && count[(int) (a[0] >>> shift & 0xFF) + 1] == n) continue; // same byte everywhere
+            for (int r = 0; r < 256; r++) count[r + 1] += count[r];
+            for (int i = 0; i < n; i++) {
+                int j = count[(int) (a[i] >>> shift & 0xFF)]++;
+                aux[j] = a[i];
+                if (words != null) auxWords[j] = words[i];
+            }
+            long[] t = a;
+            a = aux;
+            aux = t;
+            String[] u = words;
+            words = auxWords;
+            auxWords = u;
+        }
+        int unique = 0;
+        for (int i = 0; i < n; i++) {
+            long v = a[i] ^ Long.MIN_VALUE;
+            if (unique > 0 && v == a0[unique - 1]) continue;
+            a0[unique] = v;
+            if (w0 != null) w0[unique] = words[i];
+            unique++;
+        }
+        if (w0 != null) Arrays.fill(words == w0 ? auxWords : words, 0, n, null); // don't retain the input
+        return unique;
+    }
+
+    /**
+     * Sorts <tt>a[lo..hi]</tt>, whose words share their first <tt>d</tt> characters, and
+     * replaces all but the first of each run of equal words with <tt>null</tt>.
+     */
+    private static void sort(String[] a, int lo, int hi, int d) {
+        while (hi > lo + CUTOFF) {
+            swap(a, lo, lo + ThreadLocalRandom.current().nextInt(hi - lo + 1));
+            int v = charAt(a[lo], d);
+            int lt = lo, gt = hi, i = lo + 1;
+            while (i <= gt) {
+                int t = charAt(a[i], d);
+                if (t < v) swap(a, lt++, i++);
+                else if (t > v) swap(a, i, gt--);
+                else i++;
+            }
+            sort(a, lo, lt - 1, d);
+            if (v >= 0) sort(a, lt, gt, d + 1);
+            else Arrays.fill(a, lt + 1, gt + 1, null); // all end here, so all equal
+            lo = gt + 1;
+        }
+        insertionSort(a, lo, hi, d);
+    }
+
+    private static void insertionSort(String[] a, int lo, int hi, int d) {
+        for (int i = lo + 1; i <= hi; i++)
+            for (int j = i; j > lo && less(a[j], a[j - 1], d); j--)
+                swap(a, j, j - 1);
+        for (int i = lo + 1, keep = lo; i <= hi; i++) {
+            if (a[i].equals(a[keep])) a[i] = null;
+            else keep = i;
+        }
+    }
+
+    private static boolean less(String v, String w, int d) {
+        for (int i = d, n = Math.min(v.length(), w.length()); i < n; i++) {
+            char c = v.charAt(i), e = w.charAt(i);
+            if (c != e) return c < e;
+        }
+        return v.length() < w.length();
+    }
+
+    private static int charAt(String s, int d) {
+        return d < s.length() ? s.charAt(d) : -1;
+    }
+
+    private static void swap(String[] a, int i, int j) {
+        String t = a[i];
+        a[i] = a[j];
+        a[j] = t;
+    }
+}
@@ -0,0 +1,89 @@
+import java.util.Arrays;
+
+/**
+ * Deduplication engine for many small batches, meant to be reused (see <tt>DedupPool</tt>).
+ *
+ * Like <tt>OpenAddressingDedup</tt>, but the table is emptied after each batch through its
+ * insertion log, so the cost of clearing follows the batch and not the largest batch ever
+ * seen, and no words are kept alive between batches. The table is sized from the largest
+ * of the last <tt>BatchSizes.WINDOW</tt> batches: it grows as needed, and is reallocated
+ * smaller once it is <tt>BatchSizes.SHRINK_FACTOR</tt> times larger than recent batches need.
+ *
+ * Not thread safe; borrow one per thread from a <tt>DedupPool</tt>.
+ */
+class RecyclingDedup implements Dedup, ProbeStats.Source {
+    private final BatchSizes sizes = new BatchSizes();
+    private StringTable table;
+    private ProbeStats probes;
+
+    public String[] dedup(String[] strings) {
+        return Arrays.copyOf(strings, dedupInto(strings, 0, strings.length, strings));
+    }
+
+    public int dedupInto(String[] in, int from, int to, String[] out) {
+        int n = to - from;
+        int recent = sizes.record(n);
+        if (table == null || sizes.isOversized(table.capacity(), StringTable.capacityFor(recent))) {
+            table = new StringTable(recent);
+            table.countProbesInto(probes);
+        } else {
+            table.reset(n);
+        }
+        int count = 0;
+        try {
+            for (int i = from; i < to; i++) {
+                String current = in[i];
+                if (table.add(current))
+                    out[count++] = current;
+            }
+        } finally {
+            table.clear();
+        }
+        return count;
+    }
+
+    public boolean isInPlace() {return true;}
+
+    public void countProbesInto(ProbeStats stats) {
+        probes = stats;
+        if (table != null) table.countProbesInto(stats);
+    }
+
+    /**
+     * Returns the number of slots in the table, or 0 before the first batch.
+     */
+    int capacity() {return table == null ? 0 : table.capacity();}
+
+    /**
+     * The sizes of the last <tt>WINDOW</tt> batches, which decide how large a
+     * reused table or collection should be.
+     */
+    static final class BatchSizes {
+        /** Number of batches remembered. */
+        static final int WINDOW = 16;
+        /** How many times larger than needed a table may get before it is shrunk. */
+        static final int SHRINK_FACTOR = 4;
+
+        private final int[] recent = new int[WINDOW];
+        private int next;
+
+        /**
+         * Records a batch of <tt>n</tt> words, and returns the largest recent batch.
+         */
+        int record(int n) {
+            recent[next] = n;
+            next = (next + 1) % WINDOW;
+            int max = 0;
+            for (int r : recent) max = Math.max(max, r);
+            return max;
+        }
+
+        /**
+         * Returns <tt>true</tt> if <tt>actual</tt> is so much larger than <tt>needed</tt>
+         * that it should be reallocated.
+         */
+        boolean isOversized(long actual, long needed) {
+            return actual > SHRINK_FACTOR * needed;
+        }
+    }
+}
@@ -0,0 +1,28 @@
+import java.util.Iterator;
+import java.util.TreeSet;
+import java.util.function.Consumer;
+
+/**
+ * Streaming variant of <tt>SortDedup</tt>. The unique words are passed to the sink in
+ * the order they are first seen, like the other streaming variants, and
+ * <tt>sorted()</tt> lists them in the order <tt>SortDedup</tt> would return them.
+ */
+class SortStreamingDedup implements StreamingDedup {
+    private final TreeSet<String> seen = new TreeSet<>();
+    private final Consumer<String> sink;
+
+    SortStreamingDedup(Consumer<String> sink) {this.sink = sink;}
+
+    public boolean accept(String word) {
+        if (!seen.add(word)) return false;
+        sink.accept(word);
+        return true;
+    }
+
+    public int size() {return seen.size();}
+
+    /**
+     * Returns the unique words seen so far, in sorted order.
+     */
+    public Iterator<String> sorted() {return seen.iterator();}
+}
@@ -0,0 +1,135 @@
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Interface for incremental deduplication, i.e. deduplication of words that
+ * arrive one at a time.
+ *
+ * Each word is passed to the sink the moment it is seen for the first time, so
+ * the input never has to be held in memory. Only the unique words are kept.
+ *
+ * This interface also provide factory methods for the streaming variants of
+ * the <tt>Dedup</tt>-implementations.
+ */
+public interface StreamingDedup {
+
+    /*
+     * Static factory methods
+     */
+
+    /**
+     * Returns a new <tt>StreamingDedup</tt>-object backed by a hash table,
+     * that passes each unique word to <tt>sink</tt>.
+     * @see Dedup.newOpenAddressingDedup
+     */
+    static StreamingDedup newHashStreamingDedup(Consumer<String> sink) {
+        return new HashStreamingDedup(sink);
+    }
+
+    /**
+     * Returns a new <tt>StreamingDedup</tt>-object backed by a hash table sized for
+     * <tt>expectedSize</tt> unique words, that passes each unique word to <tt>sink</tt>.
+     * @see HyperLogLog
+     */
+    static StreamingDedup newHashStreamingDedup(Consumer<String> sink, int expectedSize) {
+        return new HashStreamingDedup(sink, expectedSize);
+    }
+
+    /**
+     * Returns a new <tt>StreamingDedup</tt>-object backed by a hash table, without a sink.
+     * Use <tt>accept</tt> or <tt>dedup(Stream)</tt> to get the unique words.
+     */
+    static StreamingDedup newHashStreamingDedup() {
+        return new HashStreamingDedup(word -> {});
+    }
+
+    /**
+     * Returns a new <tt>SortStreamingDedup</tt>-object, that passes each unique word
+     * to <tt>sink</tt>, and can also list the unique words in sorted order.
+     * @see Dedup.newSortDedup
+     */
+    static SortStreamingDedup newSortStreamingDedup(Consumer<String> sink) {
+        return new SortStreamingDedup(sink);
+    }
+
+    /**
+     * Returns a new <tt>SortStreamingDedup</tt>-object without a sink.
+     */
+    static SortStreamingDedup newSortStreamingDedup() {
+        return new SortStreamingDedup(word -> {});
+    }
+
+
+    /**
+     * Returns a new <tt>StreamingDedup</tt>-object that only suppresses duplicates among
+     * the last <tt>window</tt> words, in memory bounded by the window.
+     * @see WindowedDedup
+     */
+    static StreamingDedup newWindowedDedup(int window, Consumer<String> sink) {
+        return new WindowedDedup(window, sink);
+    }
+
+    /**
+     * Returns a new <tt>StreamingDedup</tt>-object that only suppresses duplicates seen
+     * within the last <tt>window</tt>, by the system clock, keeping at most
+     * <tt>maxWords</tt> words.
+     * @see TimeWindowedDedup
+     */
+    static StreamingDedup newTimeWindowedDedup(long window, TimeUnit unit, int maxWords, Consumer<String> sink) {
+        return new TimeWindowedDedup(unit.toNanos(window), 8, maxWords, System::nanoTime, sink);
+    }
+
+
+    /*
+     * Definition of interface
+     */
+
+    /**
+     * Processes one word. If it has not been seen before, it is passed to the sink
+     * before this method returns <tt>true</tt>.
+     */
+    boolean accept(String word);
+
+    /**
+     * Returns the number of unique words seen so far.
+     */
+    int size();
+
+    /**
+     * Processes all the remaining words of <tt>words</tt>.
+     */
+    default void acceptAll(Iterator<String> words) {
+        while (words.hasNext()) accept(words.next());
+    }
+
+    /**
+     * Returns a stream of the words of <tt>words</tt> that are seen for the first time.
+     * The words are also passed to the sink. The stream must be sequential.
+     */
+    default Stream<String> dedup(Stream<String> words) {
+        return words.sequential().filter(this::accept);
+    }
+}
+
+
+class HashStreamingDedup implements StreamingDedup {
+    private final StringTable seen;
+    private final Consumer<String> sink;
+
+    HashStreamingDedup(Consumer<String> sink) {this(sink, 0);}
+
+    HashStreamingDedup(Consumer<String> sink, int expectedSize) {
+        this.seen = new StringTable(expectedSize);
+        this.sink = sink;
+    }
+
+    public boolean accept(String word) {
+        if (!seen.add(word)) return false;
+        sink.accept(word);
+        return true;
+    }
+
+    public int size() {return seen.size();}
+}
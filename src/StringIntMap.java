@@ -0,0 +1,165 @@
+import java.util.Arrays;
+
+/**
+ * Open addressing hash map from strings to non-negative <tt>int</tt>s, with linear probing.
+ *
+ * Laid out like <tt>StringTable</tt>, with the values in a third parallel array, so that
+ * no objects are allocated per entry. Removal uses backward shift deletion, so the
+ * probe runs stay as short as if the removed keys had never been added. Keys must not
+ * be <tt>null</tt>.
+ *
+ * Like <tt>StringTable</tt>, the slots of the first <tt>capacity/8</tt> insertions since the
+ * last clear are logged, so a map much larger than its contents is cleared in O(size)
+ * rather than O(capacity). A key that backward shift moves lands in a slot that was already
+ * in use, so the log still covers every key.
+ */
+class StringIntMap {
+    /** Returned by <tt>get</tt> and <tt>putIfAbsent</tt> for a missing key. */
+    static final int MISSING = -1;
+
+    private String[] keys;
+    private int[] hashes;
+    private int[] values;
+    private int[] log; // slots of the first insertions since the last clear
+    private int used;  // number of logged slots, or -1 once the log has overflowed
+    private int mask;
+    private int shift;
+    private int threshold;
+    private int size;
+
+    StringIntMap(int expectedSize) {
+        allocate(StringTable.capacityFor(expectedSize));
+    }
+
+    /**
+     * Returns the value of <tt>key</tt>, or <tt>MISSING</tt>.
+     */
+    int get(String key) {
+        int i = find(key, key.hashCode());
+        return i < 0 ? MISSING : values[i];
+    }
+
+    /**
+     * Returns the value of <tt>key</tt> if it is present. Otherwise maps it to
+     * <tt>value</tt> and returns <tt>MISSING</tt>.
+     */
+    int putIfAbsent(String key, int value) {
+        int h = key.hashCode();
+        int i = find(key, h);
+        if (i >= 0) return values[i];
+        insert(~i, key, h, value);
+        return MISSING;
+    }
+
+    /**
+     * Maps <tt>key</tt> to <tt>value</tt>.
+     */
+    void put(String key, int value) {
+        int h = key.hashCode();
+        int i = find(key, h);
+        if (i >= 0) values[i] = value;
+        else insert(~i, key, h, value);
+    }
+
+    /**
+     * Removes <tt>key</tt>. Returns <tt>true</tt> if it was present.
+     */
+    boolean remove(String key) {
+        int i = find(key, key.hashCode());
+        if (i < 0) return false;
+        size--;
+        for (int j = (i + 1) & mask; keys[j] != null; j = (j + 1) & mask) {
+            int home = index(hashes[j]);
+            if (((j - home) & mask) >= ((j - i) & mask)) {
+                keys[i] = keys[j];
+                hashes[i] = hashes[j];
+                values[i] = values[j];
+                i = j;
+            }
+        }
+        keys[i] = null;
+        return true;
+    }
+
+    /**
+     * Returns the number of keys in the map.
+     */
+    int size() {return size;}
+
+    /**
+     * Removes all keys, and makes room for <tt>expectedSize</tt> keys. The arrays are
+     * only reallocated if the current capacity is too small.
+     */
+    void reset(int expectedSize) {
+        int capacity = StringTable.capacityFor(expectedSize);
+        if (capacity > keys.length) {
+            allocate(capacity);
+            size = used = 0;
+        } else {
+            clear();
+        }
+    }
+
+    /**
+     * Removes all keys, keeping the current capacity.
+     */
+    void clear() {
+        if (used >= 0) {
+            for (int k = 0; k < used; k++) keys[log[k]] = null;
+        } else {
+            Arrays.fill(keys, null);
+        }
+        size = used = 0;
+    }
+
+    private int index(int h) {
+        return (h * 0x9E3779B9) >>> shift;
+    }
+
+    /**
+     * Returns the slot of <tt>key</tt>, or <tt>~slot</tt> of the empty slot where it belongs.
+     */
+    private int find(String key, int h) {
+        int i = index(h);
+        for (String k; (k = keys[i]) != null; i = (i + 1) & mask)
+            if (hashes[i] == h && (k == key || k.equals(key)))
+                return i;
+        return ~i;
+    }
+
+    private void insert(int i, String key, int h, int value) {
+        keys[i] = key;
+        hashes[i] = h;
+        values[i] = value;
+        if (used >= 0) {
+            if (used < log.length) log[used++] = i;
+            else used = -1;
+        }
+        if (++size > threshold) grow();
+    }
+
+    private void allocate(int capacity) {
+        keys = new String[capacity];
+        hashes = new int[capacity];
+        values = new int[capacity];
+        log = new int[capacity / 8 + 1];
+        mask = capacity - 1;
+        shift = Integer.numberOfLeadingZeros(capacity) + 1;
+        threshold = capacity / 2;
+    }
+
+    private void grow() {
+        String[] oldKeys = keys;
+        int[] oldHashes = hashes, oldValues = values;
+        allocate(oldKeys.length << 1);
+        used = -1; // more keys than the log holds
+        for (int j = 0; j < oldKeys.length; j++) {
+            if (oldKeys[j] == null) continue;
+            int i = index(oldHashes[j]);
+            while (keys[i] != null) i = (i + 1) & mask;
+            keys[i] = oldKeys[j];
+            hashes[i] = oldHashes[j];
+            values[i] = oldValues[j];
+        }
+    }
+}
@@ -0,0 +1,164 @@
+/**
+ * Open addressing hash set for strings, with linear probing.
+ *
+ * The table is two flat arrays: the strings themselves, and their hash codes in a
+ * parallel <tt>int[]</tt>, so that most mismatches are rejected without calling
+ * <tt>equals</tt>. No objects are allocated per element. The load factor is kept
+ * at or below 1/2, and <tt>null</tt> is handled by a separate flag.
+ *
+ * The slots are also logged in insertion order, so that a table much larger than its
+ * contents is cleared in O(size) rather than O(capacity).
+ *
+ * With the system property <tt>dedup.countProbes=true</tt>, <tt>add</tt> records how many
+ * slots it looked at in the <tt>ProbeStats</tt> given to <tt>countProbesInto</tt>. The flag
+ * is a constant, so when it is off the JIT removes the counting altogether.
+ */
+class StringTable {
+    /** Whether tables count their probes, from the system property <tt>dedup.countProbes</tt>. */
+    static final boolean COUNT_PROBES = Boolean.getBoolean("dedup.countProbes");
+
+    private static final int MIN_CAPACITY = 16;
+    private static final int MAX_CAPACITY = 1 << 30;
+
+    private int[] hashes;
+    private String[] slots;
+    private int[] log; // slots in insertion order
+    private int used;  // number of slots in use
+    private int mask;
+    private int shift;
+    private int threshold;
+    private int size;
+    private boolean hasNull;
+    private ProbeStats probes;
+
+    /**
+     * Constructs a table that can hold <tt>expectedSize</tt> strings without growing.
+     */
+    StringTable(int expectedSize) {
+        allocate(capacityFor(expectedSize));
+    }
+
+    /**
+     * Returns the smallest power of two that holds <tt>expectedSize</tt>
+     * elements at load factor 1/2.
+     */
+    static int capacityFor(int expectedSize) {
+        int capacity = MIN_CAPACITY;
+        while (capacity < MAX_CAPACITY && capacity < 2L * expectedSize)
+            capacity <<= 1;
+        return capacity;
+    }
+
+    /**
+     * Adds <tt>s</tt> to the table. Returns <tt>true</tt> if it was not already present.
+     */
+    boolean add(String s) {
+        if (s == null) {
+            if (hasNull) return false;
+            hasNull = true;
+            size++;
+            return true;
+        }
+        int h = s.hashCode();
+        String[] slots = this.slots;
+        int[] hashes = this.hashes;
+        int home = index(h), i = home;
+        for (String t; (t = slots[i]) != null; i = (i + 1) & mask)
+            if (hashes[i] == h && (t == s || t.equals(s))) {
+                if (COUNT_PROBES && probes != null) probes.record(((i - home) & mask) + 1);
+                return false;
+            }
+        if (COUNT_PROBES && probes != null) probes.record(((i - home) & mask) + 1);
+        slots[i] = s;
+        hashes[i] = h;
+        log[used++] = i;
+        if (++size > threshold) grow();
+        return true;
+    }
+
+    /**
+     * Returns <tt>true</tt> if <tt>s</tt> is present in the table.
+     */
+    boolean contains(String s) {
+        if (s == null) return hasNull;
+        int h = s.hashCode();
+        for (int i = index(h); slots[i] != null; i = (i + 1) & mask)
+            if (hashes[i] == h && (slots[i] == s || slots[i].equals(s)))
+                return true;
+        return false;
+    }
+
+    /**
+     * Returns the number of strings in the table.
+     */
+    int size() {return size;}
+
+    /**
+     * Makes <tt>add</tt> record its probe lengths in <tt>stats</tt>, if
+     * <tt>COUNT_PROBES</tt> is set.
+     */
+    void countProbesInto(ProbeStats stats) {probes = stats;}
+
+    /**
+     * Returns the number of slots in the table.
+     */
+    int capacity() {return slots.length;}
+
+    /**
+     * Removes all strings, and makes room for <tt>expectedSize</tt> strings. The arrays
+     * are only reallocated if the current capacity is too small.
+     */
+    void reset(int expectedSize) {
+        int capacity = capacityFor(expectedSize);
+        if (capacity > slots.length) {
+            allocate(capacity);
+            size = used = 0;
+            hasNull = false;
+        } else {
+            clear();
+        }
+    }
+
+    /**
+     * Removes all strings, keeping the current capacity.
+     */
+    void clear() {
+        if (used < slots.length >>> 3) {
+            for (int k = 0; k < used; k++) slots[log[k]] = null;
+        } else {
+            java.util.Arrays.fill(slots, null);
+        }
+        size = used = 0;
+        hasNull = false;
+    }
+
+    // Fibonacci hashing: the high bits of h * 2^32/phi spread well even for
+    // the clustered hash codes of short numeric strings.
+    private int index(int h) {
+        return (h * 0x9E3779B9) >>> shift;
+    }
+
+    private void allocate(int capacity) {
+        hashes = new int[capacity];
+        slots = new String[capacity];
+        log = new int[capacity == MAX_CAPACITY ? capacity : capacity / 2 + 1];
+        mask = capacity - 1;
+        shift = Integer.numberOfLeadingZeros(capacity) + 1;
+        threshold = capacity == MAX_CAPACITY ? Integer.MAX_VALUE : capacity / 2;
+    }
+
+    private void grow() {
+        String[] oldSlots = slots;
+        int[] oldHashes = hashes;
+        int[] oldLog = log;
+        allocate(oldSlots.length << 1);
+        for (int k = 0; k < used; k++) {
+            int j = oldLog[k];
+            int i = index(oldHashes[j]);
+            while (slots[i] != null) i = (i + 1) & mask;
+            slots[i] = oldSlots[j];
+            hashes[i] = oldHashes[j];
+            log[k] = i;
+        }
+    }
+}
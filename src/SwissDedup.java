@@ -0,0 +1,151 @@
+import java.util.Arrays;
+
+/**
+ * Deduplication with a Swiss table: an open addressing table whose slots are split in
+ * groups of eight, with a control byte per slot.
+ *
+ * An empty slot has control byte <tt>0x80</tt>, a full one a seven bit tag: the hash bits
+ * just below those that pick the group. The eight control bytes of a group are packed in a <tt>long</tt>,
+ * so one compare of eight tags at a time, done with SWAR bit tricks, finds the few slots
+ * worth calling <tt>equals</tt> on; a wrong word only gets through one time in 128. The
+ * table can therefore run at a load factor of 7/8, where linear probing over
+ * <tt>String</tt> references would slow down. Groups are probed triangularly: probe
+ * <i>k</i> moves <i>k</i> groups on, which visits every group, as their number is a
+ * power of two.
+ *
+ * Like <tt>OpenAddressingDedup</tt>, the output is in first occurrence order, and
+ * <tt>dedupInto</tt> keeps its table between calls. Like <tt>StringTable</tt>, the table
+ * logs the groups it fills, so emptying it for the next call costs in proportion to the
+ * last batch rather than to the largest.
+ *
+ * Experimental: <tt>Benchmark</tt> measures it slower than <tt>OpenAddressingDedup</tt>
+ * on the inputs of this repository, so it is not among the default engines.
+ */
+class SwissDedup implements Dedup {
+    private static final long LSB = 0x0101010101010101L;
+    private static final long MSB = 0x8080808080808080L;
+    private static final long EMPTY_GROUP = MSB; // eight 0x80 bytes
+
+    private long[] control = new long[0];
+    private String[] slots = new String[0];
+    private int groupMask;
+    private int groupShift; // the group is the top bits of the hash,
+    private int tagShift;   // and the tag the seven bits below them
+    private int threshold;
+    private int size;
+    private boolean hasNull;
+    private int[] log = new int[0]; // groups filled since the last reset, while they fit
+    private int used;               // number of groups filled, more than log.length if unknown
+
+    public String[] dedup(String[] strings) {
+        return Arrays.copyOf(strings, dedupInto(strings, 0, strings.length, strings));
+    }
+
+    public int dedupInto(String[] in, int from, int to, String[] out) {
+        reset(to - from);
+        int count = 0;
+        for (int i = from; i < to; i++) {
+            String current = in[i];
+            if (add(current))
+                out[count++] = current;
+        }
+        return count;
+    }
+
+    public boolean isInPlace() {return true;}
+
+    /**
+     * Adds <tt>s</tt> to the table. Returns <tt>true</tt> if it was not already present.
+     */
+    boolean add(String s) {
+        if (s == null) {
+            if (hasNull) return false;
+            return hasNull = true;
+        }
+        int h = s.hashCode() * 0x9E3779B9;
+        long tag = (h >>> tagShift) & 0x7F;
+        long pattern = tag * LSB;
+        for (int g = h >>> groupShift, step = 1; ; g = (g + step++) & groupMask) {
+            long group = control[g];
+            long x = group ^ pattern; // zero bytes where the tag matches
+            for (long match = (x - LSB) & ~x & MSB; match != 0; match &= match - 1) {
+                String t = slots[(g << 3) + (Long.numberOfTrailingZeros(match) >>> 3)];
+                if (t == s || t.equals(s)) return false;
+            }
+            long empty = group & MSB;
+            if (empty != 0) { // not in the table, since it would have gone here
+                if (group == EMPTY_GROUP && used++ < log.length) log[used - 1] = g;
+                int shift = Long.numberOfTrailingZeros(empty) & ~7;
+                slots[(g << 3) + (shift >>> 3)] = s;
+                control[g] = group & ~(0xFFL << shift) | tag << shift;
+                if (++size > threshold) grow();
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Returns the number of words in the table.
+     */
+    int size() {return size + (hasNull ? 1 : 0);}
+
+    /**
+     * Empties the table, making room for <tt>expectedSize</tt> words.
+     */
+    private void reset(int expectedSize) {
+        int groups = groupsFor(expectedSize);
+        if (groups > control.length) {
+            allocate(groups);
+        } else if (used <= log.length) {
+            for (int k = 0; k < used; k++) {
+                int g = log[k];
+                control[g] = EMPTY_GROUP;
+                Arrays.fill(slots, g << 3, (g + 1) << 3, null);
+            }
+        } else {
+            Arrays.fill(control, EMPTY_GROUP);
+            Arrays.fill(slots, null);
+        }
+        size = used = 0;
+        hasNull = false;
+    }
+
+    /**
+     * Returns the number of groups that hold <tt>expectedSize</tt> words at load factor 7/8.
+     */
+    private static int groupsFor(int expectedSize) {
+        int groups = 2;
+        while (groups < 1 << 25 && groups * 7L < expectedSize) groups <<= 1;
+        return groups;
+    }
+
+    private void allocate(int groups) {
+        control = new long[groups];
+        Arrays.fill(control, EMPTY_GROUP);
+        slots = new String[groups << 3];
+        log = new int[groups / 8 + 1];
+        groupMask = groups - 1;
+        groupShift = Integer.numberOfLeadingZeros(groups) + 1;
+        tagShift = groupShift - 7;
+        threshold = groups * 7;
+    }
+
+    private void grow() {
+        String[] old = slots;
+        allocate(control.length << 1);
+        used = log.length + 1; // not logged while rehashing
+        for (String s : old) {
+            if (s == null) continue;
+            int h = s.hashCode() * 0x9E3779B9;
+            long tag = (h >>> tagShift) & 0x7F;
+            for (int g = h >>> groupShift, step = 1; ; g = (g + step++) & groupMask) {
+                long empty = control[g] & MSB;
+                if (empty == 0) continue;
+                int shift = Long.numberOfTrailingZeros(empty) & ~7;
+                slots[(g << 3) + (shift >>> 3)] = s;
+                control[g] = control[g] & ~(0xFFL << shift) | tag << shift;
+                break;
+            }
+        }
+    }
+}
@@ -0,0 +1,89 @@
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+
+/**
+ * Streaming deduplication over a sliding time window: a word is a duplicate if it was
+ * seen within the last <tt>window</tt> nanoseconds, give or take one bucket.
+ *
+ * Time is split into <tt>buckets</tt> buckets of <tt>window / buckets</tt> each, with a
+ * <tt>StringTable</tt> per bucket. Each word is looked up in every bucket, and added to
+ * the current one, so a word that keeps arriving stays in the window. When the current
+ * bucket is over, the oldest is cleared and reused. Duplicates are therefore suppressed
+ * for at least <tt>window - window / buckets</tt> and at most <tt>window</tt>.
+ *
+ * Memory is bounded by <tt>maxWords</tt>: when a bucket holds <tt>maxWords / buckets</tt>
+ * words, it ends early, so under overload the window gets shorter instead of larger.
+ * Clearing a bucket costs O(its size) (see <tt>StringTable.clear</tt>), so each word
+ * costs O(buckets) amortized.
+ */
+class TimeWindowedDedup implements StreamingDedup {
+    private final StringTable[] buckets;
+    private final long bucketNanos;
+    private final int maxPerBucket;
+    private final LongSupplier clock;
+    private final Consumer<String> sink;
+    private int current;
+    private long bucketEnd;
+    private boolean started;
+
+    TimeWindowedDedup(long windowNanos, int buckets, int maxWords, LongSupplier clock, Consumer<String> sink) {
+        if (buckets < 1 || windowNanos < buckets)
+            throw new IllegalArgumentException("window of " + windowNanos + " ns cannot be split in " + buckets + " buckets");
+        this.buckets = new StringTable[buckets];
+        for (int i = 0; i < buckets; i++) this.buckets[i] = new StringTable(0);
+        this.bucketNanos = windowNanos / buckets;
+        this.maxPerBucket = Math.max(1, maxWords / buckets);
+        this.clock = clock;
+        this.sink = sink;
+    }
+
+    public boolean accept(String word) {
+        return accept(word, clock.getAsLong());
+    }
+
+    /**
+     * Processes one word that arrived at <tt>nanos</tt>, on the scale of the clock.
+     * Times must not go backwards.
+     */
+    boolean accept(String word, long nanos) {
+        rotate(nanos);
+        StringTable bucket = buckets[current];
+        boolean seen = !bucket.add(word);
+        for (int i = 0; !seen && i < buckets.length; i++)
+            seen = i != current && buckets[i].contains(word);
+        if (bucket.size() >= maxPerBucket) {
+            advance();
+            bucketEnd = nanos + bucketNanos;
+        }
+        if (seen) return false;
+        sink.accept(word);
+        return true;
+    }
+
+    /**
+     * Returns the number of words in the window, counting a word once for every
+     * bucket it is in.
+     */
+    public int size() {
+        int size = 0;
+        for (StringTable bucket : buckets) size += bucket.size();
+        return size;
+    }
+
+    private void rotate(long nanos) {
+        if (!started) {
+            started = true;
+            bucketEnd = nanos + bucketNanos;
+            return;
+        }
+        if (nanos - bucketEnd < 0) return;
+        long elapsed = (nanos - bucketEnd) / bucketNanos + 1;
+        for (long k = 0; k < Math.min(elapsed, buckets.length); k++) advance();
+        bucketEnd += elapsed * bucketNanos;
+    }
+
+    private void advance() {
+        current = (current + 1) % buckets.length;
+        buckets[current].clear();
+    }
+}
@@ -1,13 +1,21 @@
-import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.io.PrintStream;
+import java.io.UncheckedIOException;
 import java.lang.management.ManagementFactory;
 import java.lang.management.ThreadMXBean;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
 import java.util.Random;
-import java.util.Scanner;
 import java.util.function.Function;
-import java.util.regex.Pattern;
 
 /**
  * Contains useful tools in Lab 1 in PG4200 
@@ -37,13 +45,23 @@ public class Utils {
          */
         public Sampler(String fileName){
             try {
-                Scanner scanner = new Scanner(new File(fileName),"Utf-8");
-                data= Pattern.compile("\\p{javaWhitespace}+").split(scanner.useDelimiter(Pattern.compile("\\A")).next());
+                data = new TokenFile(fileName).toArray();
                 this.filename = fileName;
-            } catch (FileNotFoundException fnfe){
+            } catch (NoSuchFileException nsfe){
                 System.out.println("\n\n#\n#\n# Fant ingen ord!\n# Sannsynlig problem: Filen shakespeare.txt mangler\n#\n#\n");
                 data =  new String[]{null};
+            } catch (IOException ioe){
+                throw new UncheckedIOException(ioe);
             }
+            if (data.length == 0) data = new String[]{null};
+        }
+
+        /**
+         * Constructs a sampler object that samples the words of <i>file</i>
+         */
+        public Sampler(TokenFile file){
+            data = file.size() == 0 ? new String[]{null} : file.toArray();
+            filename = file.getFilename();
         }
         /**
          * Returns a random sample of <i>size</> words from the given file.
@@ -61,6 +79,151 @@ public class Utils {
 
     }
 
+    /**
+     * The words of a text file, found by scanning a memory mapped view of the file.
+     *
+     * Words are separated by whitespace, as with <tt>\\p{javaWhitespace}+</tt>. The file is
+     * scanned once, byte by byte, and each word is recorded as an offset and a length into
+     * the mapped buffer. A word is only decoded to a <tt>String</tt> when it is asked for.
+     * Files must be UTF-8, and smaller than 2 GB.
+     */
+    public static class TokenFile implements Iterable<String> {
+        private static final boolean[] WHITESPACE = new boolean[128];
+        static {
+            for (int c = 0; c < 128; c++) WHITESPACE[c] = Character.isWhitespace(c);
+        }
+
+        private final ByteBuffer bytes;
+        private final String filename;
+        private int[] offsets;
+        private int[] lengths;
+        private int count;
+        private byte[] scratch = new byte[64];
+
+        /**
+         * Maps the file <i>fileName</i> and finds its words.
+         */
+        public TokenFile(String fileName) throws IOException {
+            try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ)) {
+                long size = channel.size();
+                if (size > Integer.MAX_VALUE)
+                    throw new IOException("File too large to map: '" + fileName + "' (" + size + " bytes)");
+                bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            }
+            filename = fileName;
+            scan();
+        }
+
+        private void scan() {
+            int size = bytes.limit();
+            offsets = new int[Math.max(16, size / 6)];
+            lengths = new int[offsets.length];
+            int start = -1;
+            for (int i = 0; i < size; ) {
+                int b = bytes.get(i);
+                int width = 1;
+                boolean space;
+                if (b >= 0) {
+                    space = WHITESPACE[b];
+                } else {
+                    width = utf8Width(i, size);
+                    space = width == 3 && Character.isWhitespace(decode3(b, bytes.get(i + 1), bytes.get(i + 2)));
+                }
+                if (space) {
+                    if (start >= 0) add(start, i - start);
+                    start = -1;
+                } else if (start < 0) {
+                    start = i;
+                }
+                i += width;
+            }
+            if (start >= 0) add(start, size - start);
+        }
+
+        // The lead byte at i and the continuation bytes after it, at most as many as the lead
+        // byte announces, so that a malformed sequence never swallows the byte after it.
+        // Only the three byte sequences contain non-ASCII whitespace (U+1680 - U+3000)
+        private int utf8Width(int i, int size) {
+            int b = bytes.get(i);
+            int expected = (b & 0xE0) == 0xC0 ? 2 : (b & 0xF0) == 0xE0 ? 3 : (b & 0xF8) == 0xF0 ? 4 : 1;
+            int width = 1;
+            while (width < expected && i + width < size && (bytes.get(i + width) & 0xC0) == 0x80) width++;
+            return width;
+        }
+
+        private static int decode3(int b0, int b1, int b2) {
+            return (b0 & 0x0F) << 12 | (b1 & 0x3F) << 6 | (b2 & 0x3F);
+        }
+
+        private void add(int offset, int length) {
+            if (count == offsets.length) {
+                offsets = Arrays.copyOf(offsets, count * 2);
+                lengths = Arrays.copyOf(lengths, count * 2);
+            }
+            offsets[count] = offset;
+            lengths[count++] = length;
+        }
+
+        /**
+         * Returns the number of words in the file
+         */
+        public int size(){return count;}
+
+        /**
+         * Returns the position of word number <i>i</i> in <tt>buffer()</tt>
+         */
+        public int offset(int i){return offsets[i];}
+
+        /**
+         * Returns the length in bytes of word number <i>i</i>
+         */
+        public int length(int i){return lengths[i];}
+
+        /**
+         * Returns a read only view of the mapped file
+         */
+        public ByteBuffer buffer(){return bytes.asReadOnlyBuffer();}
+
+        /**
+         * Returns word number <i>i</i>, decoded to a <tt>String</tt>.
+         * Not thread safe, since a scratch buffer is reused between calls.
+         */
+        public String get(int i){
+            int length = lengths[i];
+            if (length > scratch.length) scratch = new byte[Math.max(length, 2 * scratch.length)];
+            for (int j = 0, offset = offsets[i]; j < length; j++) scratch[j] = bytes.get(offset + j);
+            return new String(scratch, 0, length, StandardCharsets.UTF_8);
+        }
+
+        /**
+         * Returns all the words of the file, decoded to <tt>String</tt>s.
+         */
+        public String[] toArray(){
+            String[] words = new String[count];
+            for (int i = 0; i < count; i++) words[i] = get(i);
+            return words;
+        }
+
+        /**
+         * Returns an iterator that decodes the words one at a time.
+         */
+        public Iterator<String> iterator(){
+            return new Iterator<String>() {
+                private int next = 0;
+                public boolean hasNext(){return next < count;}
+                public String next(){
+                    if (next >= count) throw new NoSuchElementException();
+                    return get(next++);
+                }
+            };
+        }
+
+        /**
+         * Returns the name of the file being read from
+         */
+        public String getFilename(){return filename;}
+    }
+
     /**
     * Priovides time measurement functionality
     * This class measures the time in nanoseconds, based on <tt>System.nanotime()</tt>
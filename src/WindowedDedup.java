@@ -0,0 +1,112 @@
+import java.util.Objects;
+import java.util.function.Consumer;
+
+/**
+ * Streaming deduplication over a sliding window of the last <tt>window</tt> words, for
+ * endless streams where only recent duplicates matter. A word is a duplicate if it is
+ * among the <tt>window</tt> words before it.
+ *
+ * The window is a ring buffer of the words, and an open addressing index maps each word
+ * in the window to the position where it was last seen. When a word falls out of the
+ * ring, it is removed from the index, unless it has been seen again since, with
+ * backward shift deletion so that no tombstones build up. Memory is fixed by the window
+ * size, and each word costs O(1): two or three probes and at most one removal.
+ */
+class WindowedDedup implements StreamingDedup {
+    private final String[] ring;
+    private final Consumer<String> sink;
+    private long position;
+
+    // Index from word to last position, with linear probing
+    private final String[] keys;
+    private final int[] hashes;
+    private final long[] lastSeen;
+    private final int mask;
+    private final int shift;
+    private int size;
+
+    WindowedDedup(int window, Consumer<String> sink) {
+        if (window < 1) throw new IllegalArgumentException("window must be positive: " + window);
+        this.ring = new String[window];
+        this.sink = sink;
+        int capacity = StringTable.capacityFor(window);
+        keys = new String[capacity];
+        hashes = new int[capacity];
+        lastSeen = new long[capacity];
+        mask = capacity - 1;
+        shift = Integer.numberOfLeadingZeros(capacity) + 1;
+    }
+
+    /**
+     * Processes one word, which must not be <tt>null</tt>. If it is not among the last
+     * <tt>window</tt> words, it is passed to the sink before this method returns <tt>true</tt>.
+     */
+    public boolean accept(String word) {
+        int h = Objects.requireNonNull(word, "word").hashCode();
+        boolean seen = find(word, h) >= 0;
+
+        int slot = (int) (position % ring.length);
+        String old = ring[slot];
+        if (old != null) {
+            int i = find(old, old.hashCode());
+            if (lastSeen[i] == position - ring.length) removeAt(i); // not seen since
+        }
+        ring[slot] = word;
+
+        int i = find(word, h);
+        if (i < 0) {
+            i = ~i;
+            keys[i] = word;
+            hashes[i] = h;
+            size++;
+        }
+        lastSeen[i] = position++;
+
+        if (seen) return false;
+        sink.accept(word);
+        return true;
+    }
+
+    /**
+     * Returns the number of distinct words in the window.
+     */
+    public int size() {return size;}
+
+    /**
+     * Returns the number of words in the window.
+     */
+    int window() {return ring.length;}
+
+    private int index(int h) {
+        return (h * 0x9E3779B9) >>> shift;
+    }
+
+    /**
+     * Returns the slot of <tt>s</tt>, or <tt>~slot</tt> of the empty slot where it belongs.
+     */
+    private int find(String s, int h) {
+        int i = index(h);
+        for (String t; (t = keys[i]) != null; i = (i + 1) & mask)
+            if (hashes[i] == h && (t == s || t.equals(s)))
+                return i;
+        return ~i;
+    }
+
+    /**
+     * Empties slot <tt>i</tt>, and moves later entries of the probe run back into the
+     * gap if that brings them closer to their home slot.
+     */
+    private void removeAt(int i) {
+        size--;
+        for (int j = (i + 1) & mask; keys[j] != null; j = (j + 1) & mask) {
+            int home = index(hashes[j]);
+            if (((j - home) & mask) >= ((j - i) & mask)) {
+                keys[i] = keys[j];
+                hashes[i] = hashes[j];
+                lastSeen[i] = lastSeen[j];
+                i = j;
+            }
+        }
+        keys[i] = null;
+    }
+}
@@ -0,0 +1,296 @@
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+import java.util.function.IntSupplier;
+
+/**
+ * Generator of synthetic input for the <tt>Dedup</tt>-implementations, with a controllable
+ * duplicate distribution.
+ *
+ * A workload is described by its size, its cardinality (the number of distinct words to
+ * draw from), the skew of the draws, the token lengths and the order of the output:
+ * <pre>
+ *     String[] words = new Workload().size(1000000).cardinality(50000)
+ *             .skew(Workload.Skew.ZIPF).order(Workload.Order.CLUSTERED).generate();
+ * </pre>
+ * Everything is derived from the seed, so the same description always gives the same words.
+ *
+ * The vocabulary is built once, and each draw is O(1): Zipf draws use Vose's alias
+ * method, and the sorted and clustered orders are made with a counting sort over the
+ * vocabulary. <tt>writeTo</tt> streams the words to a file without holding them in
+ * memory, for sizes beyond what fits in a <tt>String[]</tt>.
+ */
+public class Workload {
+
+    /** Distribution of the draws from the vocabulary. */
+    public enum Skew {
+        /** Every word is equally likely. */
+        UNIFORM,
+        /** The word of rank <i>r</i> has probability proportional to <i>1/r<sup>s</sup></i>. */
+        ZIPF,
+        /** A hot fraction of the words gets a fixed share of the draws. */
+        HOTSET
+    }
+
+    /** Order of the generated words. */
+    public enum Order {
+        /** In the order they are drawn. */
+        RANDOM,
+        /** Sorted, as <tt>SortDedup</tt> would sort them. */
+        SORTED,
+        /** Sorted in reverse. */
+        REVERSE,
+        /** All copies of a word next to each other, words in random order. */
+        CLUSTERED
+    }
+
+    private long size = 1000;
+    private int cardinality = 100;
+    private Skew skew = Skew.UNIFORM;
+    private double zipfExponent = 1.0;
+    private double hotFraction = 0.01;
+    private double hotProbability = 0.9;
+    private int minLength = 4;
+    private int maxLength = 10;
+    private boolean numeric;
+    private Order order = Order.RANDOM;
+    private long seed = 42;
+    private String[] vocabulary;
+
+    /** Sets the number of words to generate. */
+    public Workload size(long size) {this.size = size; return this;}
+
+    /** Sets the number of distinct words to draw from. */
+    public Workload cardinality(int cardinality) {this.cardinality = cardinality; return this;}
+
+    /** Sets the distribution of the draws. */
+    public Workload skew(Skew skew) {this.skew = skew; return this;}
+
+    /** Sets the exponent <i>s</i> of the Zipf distribution. */
+    public Workload zipfExponent(double s) {this.zipfExponent = s; return this;}
+
+    /** Sets the fraction of the words that are hot, and the probability of drawing a hot word. */
+    public Workload hotSet(double fraction, double probability) {
+        this.hotFraction = fraction;
+        this.hotProbability = probability;
+        return this;
+    }
+
+    /**
+     * Sets the range of token lengths, uniformly distributed. Each token ends in its index
+     * in base 26, so tokens are at least as long as that, and <tt>generate</tt> rejects a
+     * cardinality whose indices are longer than <tt>max</tt>.
+     */
+    public Workload tokenLength(int min, int max) {
+        if (min < 1 || min > max) throw new IllegalArgumentException("invalid token lengths: " + min + " to " + max);
+        this.minLength = min;
+        this.maxLength = max;
+        return this;
+    }
+
+    /** Generates decimal integers, like <tt>tall100000.txt</tt>, instead of letters. */
+    public Workload numeric(boolean numeric) {this.numeric = numeric; return this;}
+
+    /** Sets the order of the generated words. */
+    public Workload order(Order order) {this.order = order; return this;}
+
+    /** Sets the seed. */
+    public Workload seed(long seed) {this.seed = seed; return this;}
+
+    /**
+     * Draws from the distinct words of <tt>words</tt> instead of generated tokens,
+     * e.g. the words of a text file. The first <tt>cardinality</tt> distinct words are
+     * used, or all of them if there are fewer. Overrides the token lengths.
+     */
+    public Workload vocabulary(String[] words) {
+        this.vocabulary = Dedup.openAddressingDedup(words.clone());
+        return this;
+    }
+
+    /**
+     * Returns the words of the workload.
+     */
+    public String[] generate() {
+        if (size > Integer.MAX_VALUE - 8) throw new IllegalArgumentException("too large for an array, use writeTo: " + size);
+        String[] words = new String[(int) size];
+        int[] next = {0};
+        emit(word -> words[next[0]++] = word);
+        return words;
+    }
+
+    /**
+     * Writes the words of the workload to the file <tt>fileName</tt>, one per line, as UTF-8.
+     */
+    public void writeTo(String fileName) throws IOException {
+        String[] vocabulary = vocabulary();
+        byte[][] lines = new byte[vocabulary.length][];
+        for (int i = 0; i < lines.length; i++) lines[i] = (vocabulary[i] + "\n").getBytes(StandardCharsets.UTF_8);
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(Paths.get(fileName)), 1 << 16)) {
+            emitIndices(vocabulary.length, index -> {
+                try {
+                    out.write(lines[index]);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private void emit(Consumer<String> sink) {
+        String[] vocabulary = vocabulary();
+        emitIndices(vocabulary.length, index -> sink.accept(vocabulary[index]));
+    }
+
+    /**
+     * Draws <tt>size</tt> indices into the sorted vocabulary, and passes them to the sink
+     * in the requested order.
+     */
+    private void emitIndices(int words, IntConsumer sink) {
+        SplittableRandom random = new SplittableRandom(seed);
+        IntSupplier draw = draw(words, random);
+        if (order == Order.RANDOM) {
+            for (long i = 0; i < size; i++) sink.accept(draw.getAsInt());
+            return;
+        }
+        long[] counts = new long[words];
+        for (long i = 0; i < size; i++) counts[draw.getAsInt()]++;
+        int[] visit = new int[words];
+        for (int i = 0; i < words; i++) visit[i] = order == Order.REVERSE ? words - 1 - i : i;
+        if (order == Order.CLUSTERED) shuffle(visit, random);
+        for (int index : visit)
+            for (long c = counts[index]; c > 0; c--) sink.accept(index);
+    }
+
+    /**
+     * Returns the vocabulary in sorted order, generating it if needed.
+     */
+    private String[] vocabulary() {
+        if (cardinality < 1) throw new IllegalArgumentException("cardinality must be positive: " + cardinality);
+        if (vocabulary != null) {
+            String[] sorted = Arrays.copyOf(vocabulary, Math.min(cardinality, vocabulary.length));
+            Arrays.sort(sorted);
+            return sorted;
+        }
+        SplittableRandom random = new SplittableRandom(seed ^ 0x5DEECE66DL);
+        String[] words = new String[cardinality];
+        if (numeric) {
+            // Increasing with random gaps, so distinct without a set
+            long value = random.nextInt(16);
+            for (int i = 0; i < cardinality; i++) {
+                words[i] = Long.toString(value);
+                value += 1 + random.nextInt(16);
+            }
+        } else {
+            // A fixed width base 26 suffix of the index makes each word distinct
+            int width = 1;
+            for (long n = 26; n < cardinality; n *= 26) width++;
+            if (width > maxLength)
+                throw new IllegalArgumentException(cardinality + " distinct tokens need at least " + width + " letters, not " + maxLength);
+            char[] chars = new char[maxLength];
+            for (int i = 0; i < cardinality; i++) {
+                int length = minLength + random.nextInt(maxLength - minLength + 1);
+                int end = chars.length, j = end;
+                for (int k = 0, index = i; k < width; k++, index /= 26)
+                    chars[--j] = (char) ('a' + index % 26);
+                int start = Math.min(j, end - length);
+                for (int k = start; k < j; k++) chars[k] = (char) ('a' + random.nextInt(26));
+                words[i] = new String(chars, start, end - start);
+            }
+        }
+        Arrays.sort(words);
+        return words;
+    }
+
+    /**
+     * Returns a source of indices into the sorted vocabulary. The skewed distributions
+     * are defined over ranks, and the ranks are shuffled over the vocabulary so that
+     * popularity does not follow sort order.
+     */
+    private IntSupplier draw(int words, SplittableRandom random) {
+        switch (skew) {
+            case UNIFORM:
+                return () -> random.nextInt(words);
+            case HOTSET: {
+                int[] rank = shuffledRanks(words, random);
+                int hot = Math.max(1, Math.min(words, (int) Math.round(words * hotFraction)));
+                return () -> rank[random.nextDouble() < hotProbability || hot == words
+                        ? random.nextInt(hot)
+                        : hot + random.nextInt(words - hot)];
+            }
+            case ZIPF: {
+                int[] rank = shuffledRanks(words, random);
+                double[] weights = new double[words];
+                for (int r = 0; r < words; r++) weights[r] = 1 / Math.pow(r + 1, zipfExponent);
+                AliasTable alias = new AliasTable(weights);
+                return () -> rank[alias.next(random)];
+            }
+            default:
+                throw new IllegalStateException(String.valueOf(skew));
+        }
+    }
+
+    private static int[] shuffledRanks(int words, SplittableRandom random) {
+        int[] rank = new int[words];
+        for (int i = 0; i < words; i++) rank[i] = i;
+        shuffle(rank, random);
+        return rank;
+    }
+
+    private static void shuffle(int[] a, SplittableRandom random) {
+        for (int i = a.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int t = a[i];
+            a[i] = a[j];
+            a[j] = t;
+        }
+    }
+
+    /**
+     * Vose's alias method: O(n) to build, O(1) per draw from a discrete distribution.
+     */
+    private static final class AliasTable {
+        private final double[] probability;
+        private final int[] alias;
+
+        AliasTable(double[] weights) {
+            int n = weights.length;
+            probability = new double[n];
+            alias = new int[n];
+            double sum = 0;
+            for (double w : weights) sum += w;
+            double[] scaled = new double[n];
+            int[] small = new int[n], large = new int[n];
+            int smalls = 0, larges = 0;
+            for (int i = 0; i < n; i++) {
+                scaled[i] = weights[i] * n / sum;
+                if (scaled[i] < 1) small[smalls++] = i;
+                else large[larges++] = i;
+            }
+            while (smalls > 0 && larges > 0) {
+                int s = small[--smalls], l = large[--larges];
+                probability[s] = scaled[s];
+                alias[s] = l;
+                scaled[l] = scaled[l] + scaled[s] - 1;
+                if (scaled[l] < 1) small[smalls++] = l;
+                else large[larges++] = l;
+            }
+            while (larges > 0) probability[large[--larges]] = 1;
+            while (smalls > 0) probability[small[--smalls]] = 1;
+        }
+
+        int next(SplittableRandom random) {
+            int i = random.nextInt(probability.length);
+            return random.nextDouble() < probability[i] ? i : alias[i];
+        }
+    }
+}